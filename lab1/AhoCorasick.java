@@ -0,0 +1,135 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Aho-Corasick自动机
+ * 一遍扫描找出句子中所有的词典词，结果写成词图（WordLattice），供最短路等分词方法使用。
+ * 结点按广度优先编号，同一结点的孩子编号连续、标签有序，所以孩子只用两个数组表示：
+ * 结点u的孩子为 [firstChild[u], firstChild[u + 1])，孩子v的边上字符为label[v]，查找时二分。
+ */
+class AhoCorasick {
+    private int[] firstChild;
+    private char[] label;
+    private int[] fail;      // 失配指针：当前串的最长真后缀所在结点
+    private int[] output;    // 输出指针：沿失配指针能到达的最近的词尾结点，0表示没有
+    private int[] depth;     // 结点深度，即从根到该结点的串长
+    private boolean[] isEnd;
+    private int size;
+
+    /**
+     * 从词典文件构建自动机
+     * @param path 词典文件路径，每行一个词
+     * @return 自动机
+     */
+    public static AhoCorasick load(String path) {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))){
+            String line;
+            while ((line = br.readLine()) != null)
+                words.add(line);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return new AhoCorasick(words);
+    }
+
+    public AhoCorasick(List<String> words) {
+        TreeSet<String> set = new TreeSet<>();
+        for (String w : words) {
+            if (!w.isEmpty()) set.add(w);
+        }
+        String[] sorted = set.toArray(new String[0]);
+
+        // 结点数不超过总字符数+1
+        int capacity = 1;
+        for (String w : sorted) capacity += w.length();
+        firstChild = new int[capacity + 1];
+        label = new char[capacity];
+        depth = new int[capacity];
+        isEnd = new boolean[capacity];
+        int[] parent = new int[capacity];
+
+        // 广度优先建树，队列里存 [结点, 词区间左端, 词区间右端]；结点编号即出队顺序
+        int[][] ranges = new int[capacity][];
+        ranges[0] = new int[]{0, sorted.length};
+        size = 1;
+        for (int u = 0; u < size; u++) {
+            int left = ranges[u][0], right = ranges[u][1];
+            ranges[u] = null;
+            int d = depth[u];
+            // 长度恰好为d的词在这里结束；排序后它一定排在区间最前面
+            while (left < right && sorted[left].length() == d) {
+                isEnd[u] = true;
+                left++;
+            }
+            firstChild[u] = size;
+            int i = left;
+            while (i < right) {
+                char c = sorted[i].charAt(d);
+                int j = i + 1;
+                while (j < right && sorted[j].charAt(d) == c) j++;
+                int v = size++;
+                label[v] = c;
+                depth[v] = d + 1;
+                parent[v] = u;
+                ranges[v] = new int[]{i, j};
+                i = j;
+            }
+        }
+        firstChild[size] = size;
+
+        // 按编号顺序（即广度优先顺序）求失配指针和输出指针，父结点总是先于孩子处理
+        fail = new int[size];
+        output = new int[size];
+        for (int v = 1; v < size; v++) {
+            int p = parent[v];
+            fail[v] = p == 0 ? 0 : next(fail[p], label[v]);
+            output[v] = isEnd[fail[v]] ? fail[v] : output[fail[v]];
+        }
+    }
+
+    // 在结点u的孩子中二分查找字符c，找不到返回-1
+    private int child(int u, char c) {
+        int lo = firstChild[u], hi = firstChild[u + 1] - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (label[mid] < c) lo = mid + 1;
+            else if (label[mid] > c) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    // 状态转移：没有对应孩子就沿失配指针回退
+    private int next(int u, char c) {
+        while (true) {
+            int v = child(u, c);
+            if (v >= 0) return v;
+            if (u == 0) return 0;
+            u = fail[u];
+        }
+    }
+
+    /**
+     * 一遍扫描找出text中所有词典词，写入词图
+     * @param text 待分词的文本
+     * @param lattice 词图，调用时先被清空
+     */
+    public void match(CharSequence text, WordLattice lattice) {
+        lattice.reset(text.length());
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            state = next(state, text.charAt(i));
+            int end = i + 1;
+            // 当前结点及其输出链上的每个词尾结点，都对应一个以end结尾的词
+            for (int v = isEnd[state] ? state : output[state]; v != 0; v = output[v]) {
+                lattice.add(end - depth[v], end);
+            }
+            lattice.endPosition(end);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * 词图最短路分词器：Aho-Corasick一遍扫描建词图，再求词数最少的切分，不需要最大匹配长度
+ */
+class DagSegmenter implements Segmenter {
+    private final AhoCorasick automaton;
+    private final ThreadLocal<WordLattice> lattices = ThreadLocal.withInitial(WordLattice::new);
+
+    public DagSegmenter(AhoCorasick automaton) {
+        this.automaton = automaton;
+    }
+
+    @Override
+    public void segment(CharSequence text, TokenBuffer out) {
+        WordLattice lattice = lattices.get();
+        automaton.match(text, lattice);
+        lattice.shortestPath(out);
+    }
+}
@@ -0,0 +1,228 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * 双数组Trie树（Double-Array Trie）
+ * 用两个int数组base/check代替每个结点一个HashMap：
+ * 从状态s沿字符c转移到状态t = base[s] + code(c)，当且仅当check[t] == s时转移合法。
+ * 字符先映射为紧凑的编码（1..字符种类数），避免数组按65536个字符的跨度展开。
+ * 查找只读数组，构建完成后可被多个线程共享。
+ */
+class DoubleArrayTrie implements WordDict, SuffixDict {
+    int[] base;
+    int[] check;
+    boolean[] isEnd;            // 该状态是否可作为词尾
+    int[] charCode = new int[Character.MAX_VALUE + 1];  // 字符 -> 紧凑编码，0表示词典中没有这个字符
+    int size;                   // 实际用到的数组长度
+
+    private boolean[] used;     // 构建时使用：该位置是否已被占用
+    private int nextCheckPos;   // 构建时使用：下一次寻找base的起点，跳过已经很满的前段
+
+    /**
+     * 从词典文件构建双数组Trie树，只构建一次，之后只读
+     * @param path 词典文件路径，每行一个词
+     * @return 构建好的双数组Trie树
+     */
+    public static DoubleArrayTrie load(String path) {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))){
+            String line;
+            while ((line = br.readLine()) != null)
+                words.add(line);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        DoubleArrayTrie dat = new DoubleArrayTrie();
+        dat.build(words);
+        return dat;
+    }
+
+    /**
+     * 用一组词构建双数组Trie树
+     * @param words 词列表，可以无序、可以有重复和空串
+     */
+    public void build(List<String> words) {
+        // 排序去重，去掉空串。排序后同一父结点下的词在列表中是连续的一段
+        TreeSet<String> set = new TreeSet<>();
+        for (String w : words) {
+            if (!w.isEmpty()) set.add(w);
+        }
+        String[] sorted = set.toArray(new String[0]);
+
+        // 按出现次数给字符编码，常用字编码小，孩子结点更集中
+        int[] freq = new int[Character.MAX_VALUE + 1];
+        for (String w : sorted) {
+            for (int i = 0; i < w.length(); i++) freq[w.charAt(i)]++;
+        }
+        List<Character> chars = new ArrayList<>();
+        for (int c = 0; c <= Character.MAX_VALUE; c++) {
+            if (freq[c] > 0) chars.add((char) c);
+        }
+        chars.sort((a, b) -> freq[b] - freq[a]);
+        Arrays.fill(charCode, 0);
+        for (int i = 0; i < chars.size(); i++) {
+            charCode[chars.get(i)] = i + 1;
+        }
+
+        int capacity = Math.max(1024, chars.size() + 1);
+        base = new int[capacity];
+        check = new int[capacity];
+        isEnd = new boolean[capacity];
+        used = new boolean[capacity];
+        used[0] = true;  // 根结点为状态0
+        size = 1;
+        nextCheckPos = 1;
+
+        // 广度优先，队列里存 [状态, 词区间左端, 词区间右端, 深度]
+        Deque<int[]> queue = new ArrayDeque<>();
+        queue.add(new int[]{0, 0, sorted.length, 0});
+        while (!queue.isEmpty()) {
+            int[] task = queue.poll();
+            int s = task[0], left = task[1], right = task[2], depth = task[3];
+
+            // 长度恰好为depth的词在这里结束；排序后它一定排在区间最前面
+            while (left < right && sorted[left].length() == depth) {
+                isEnd[s] = true;
+                left++;
+            }
+            if (left == right) continue;
+
+            // 收集孩子：区间内第depth个字符不同的若干段
+            List<int[]> children = new ArrayList<>();  // [编码, 子区间左端, 子区间右端]
+            int i = left;
+            while (i < right) {
+                char c = sorted[i].charAt(depth);
+                int j = i + 1;
+                while (j < right && sorted[j].charAt(depth) == c) j++;
+                children.add(new int[]{charCode[c], i, j});
+                i = j;
+            }
+
+            int b = findBase(children);
+            base[s] = b;
+            for (int[] child : children) {
+                int t = b + child[0];
+                used[t] = true;
+                check[t] = s;
+                size = Math.max(size, t + 1);
+                queue.add(new int[]{t, child[1], child[2], depth + 1});
+            }
+        }
+
+        // 没用到的位置check置为-1，避免和根结点0混淆；再把数组收缩到实际大小
+        for (int t = 0; t < size; t++) {
+            if (!used[t]) check[t] = -1;
+        }
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+        isEnd = Arrays.copyOf(isEnd, size);
+        used = null;
+    }
+
+    // 为一组孩子寻找base：所有 base + 编码 的位置都空闲
+    private int findBase(List<int[]> children) {
+        int first = children.get(0)[0];
+        int pos = Math.max(nextCheckPos, first);
+        boolean dense = true;  // 从nextCheckPos开始是否一路都被占用
+        while (true) {
+            ensureCapacity(pos + 1);
+            if (used[pos]) {
+                if (dense) nextCheckPos = pos + 1;
+                pos++;
+                continue;
+            }
+            dense = false;
+            int b = pos - first;
+            boolean ok = true;
+            for (int[] child : children) {
+                int t = b + child[0];
+                ensureCapacity(t + 1);
+                if (used[t]) {
+                    ok = false;
+                    break;
+                }
+            }
+            if (ok) return b;
+            pos++;
+        }
+    }
+
+    private void ensureCapacity(int need) {
+        if (need <= base.length) return;
+        int cap = Math.max(need, base.length + (base.length >> 1));
+        base = Arrays.copyOf(base, cap);
+        check = Arrays.copyOf(check, cap);
+        isEnd = Arrays.copyOf(isEnd, cap);
+        used = Arrays.copyOf(used, cap);
+    }
+
+    /**
+     * 与Trie.searchLongestPrefix相同：查找str的最长的、在词典中的前缀
+     * @param str 长度为maxLen（或小于maxLen）的待分词字符串
+     * @return 最长前缀的词，当str中没有词典中的词时返回null
+     */
+    public String searchLongestPrefix(String str) {
+        int matched = searchLongestPrefix(str, 0, str.length());
+        return matched == 0 ? null : str.substring(0, matched);
+    }
+
+    /**
+     * 查找text从from开始、长度不超过maxLen的最长词典词，只做数组访问
+     * @param text 待分词的文本
+     * @param from 匹配起点下标
+     * @param maxLen 最大匹配长度
+     * @return 最长匹配词的长度，没有匹配时返回0
+     */
+    @Override
+    public int searchLongestPrefix(CharSequence text, int from, int maxLen) {
+        int s = 0;
+        int matched = 0;
+        int end = Math.min(text.length(), from + maxLen);
+        for (int i = from; i < end; i++) {
+            int code = charCode[text.charAt(i)];
+            if (code == 0) break;
+            int t = base[s] + code;
+            if (t >= size || check[t] != s) break;
+            s = t;
+            if (isEnd[s]) matched = i - from + 1;
+        }
+        return matched;
+    }
+
+    /**
+     * 用于逆向匹配：本树中存的是倒序的词，从end往前查找text中以end结尾的最长词
+     * @param text 待分词的文本
+     * @param end 匹配终点下标（不含）
+     * @param maxLen 最大匹配长度
+     * @return 最长匹配词的长度，没有匹配时返回0
+     */
+    @Override
+    public int searchLongestSuffix(CharSequence text, int end, int maxLen) {
+        int s = 0;
+        int matched = 0;
+        int from = Math.max(0, end - maxLen);
+        for (int i = end - 1; i >= from; i--) {
+            int code = charCode[text.charAt(i)];
+            if (code == 0) break;
+            int t = base[s] + code;
+            if (t >= size || check[t] != s) break;
+            s = t;
+            if (isEnd[s]) matched = end - i;
+        }
+        return matched;
+    }
+
+    /**
+     * 把双数组写成二进制镜像，供MappedDoubleArrayTrie直接映射使用
+     * 格式：[size, 4B] [charCode, 65536×4B] [base, size×4B] [check, size×4B] [isEnd, size×1B] [补齐到4字节]
+     * @param out 输出流
+     */
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int code : charCode) out.writeInt(code);
+        for (int i = 0; i < size; i++) out.writeInt(base[i]);
+        for (int i = 0; i < size; i++) out.writeInt(check[i]);
+        for (int i = 0; i < size; i++) out.writeByte(isEnd[i] ? 1 : 0);
+        for (int i = size; i % 4 != 0; i++) out.writeByte(0);
+    }
+}
@@ -0,0 +1,151 @@
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 分词词典索引：词表只读入一次，同时建正向与逆向两棵双数组Trie树
+ * 正向树做前缀匹配（FMM），逆向树存倒序的词，做后缀匹配（RMM），BiMM两者都用。
+ * 两棵树可以存成一个二进制镜像文件，之后的运行直接内存映射打开，不再重建。
+ */
+class Lexicon implements WordDict {
+    private static final int MAGIC = 0x4C455831;  // "LEX1"
+
+    private final WordDict forward;
+    private final SuffixDict backward;
+    private final int maxWordLength;  // 词典中最长词的长度，作为默认的最大匹配长度
+
+    /**
+     * 从词典文件构建词典索引
+     * @param path 词典文件路径，每行一个词
+     * @return 词典索引
+     */
+    public static Lexicon load(String path) {
+        return new Lexicon(readWords(path));
+    }
+
+    /**
+     * 打开词典的二进制镜像（词典文件名加".img"），镜像不存在或比词典旧时先构建并写出镜像
+     * 镜像以只读方式内存映射，查找直接在映射上进行
+     * @param path 词典文件路径，每行一个词
+     * @return 词典索引
+     */
+    public static Lexicon open(String path) {
+        Path dictPath = Paths.get(path);
+        Path imagePath = Paths.get(path + ".img");
+        try {
+            if (!Files.exists(imagePath)
+                    || Files.getLastModifiedTime(imagePath).compareTo(Files.getLastModifiedTime(dictPath)) < 0) {
+                load(path).save(imagePath.toString());
+            }
+            return map(imagePath.toString());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 内存映射一个词典镜像
+     * @param imagePath 镜像文件路径
+     * @return 直接在映射上查找的词典索引
+     */
+    public static Lexicon map(String imagePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(imagePath), StandardOpenOption.READ)) {
+            // 映射在通道关闭后仍然有效
+            MappedByteBuffer image = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (image.getInt(0) != MAGIC) {
+                throw new IOException("不是词典镜像文件：" + imagePath);
+            }
+            int maxWordLength = image.getInt(4);
+            MappedDoubleArrayTrie forward = new MappedDoubleArrayTrie(image, 8);
+            MappedDoubleArrayTrie backward = new MappedDoubleArrayTrie(image, 8 + forward.byteLength());
+            return new Lexicon(forward, backward, maxWordLength);
+        }
+    }
+
+    // 按char倒序，代理对也拆开倒过来：searchLongestSuffix从后往前逐个char走，先遇到低代理再遇到高代理
+    // （StringBuilder.reverse()会保持代理对的顺序，含增补字符的词在逆向树里就永远匹配不上）
+    private static String reverseChars(String w) {
+        char[] chars = new char[w.length()];
+        for (int i = 0; i < chars.length; i++) chars[chars.length - 1 - i] = w.charAt(i);
+        return new String(chars);
+    }
+
+    public Lexicon(List<String> words) {
+        List<String> reversed = new ArrayList<>(words.size());
+        int longest = 0;
+        for (String w : words) {
+            longest = Math.max(longest, w.length());
+            reversed.add(reverseChars(w));
+        }
+        DoubleArrayTrie forward = new DoubleArrayTrie();
+        forward.build(words);
+        DoubleArrayTrie backward = new DoubleArrayTrie();
+        backward.build(reversed);
+        this.forward = forward;
+        this.backward = backward;
+        this.maxWordLength = longest;
+    }
+
+    private Lexicon(WordDict forward, SuffixDict backward, int maxWordLength) {
+        this.forward = forward;
+        this.backward = backward;
+        this.maxWordLength = maxWordLength;
+    }
+
+    /**
+     * 把内存中构建的两棵树写成镜像文件
+     * 格式：[MAGIC, 4B] [最长词长, 4B] [正向树] [逆向树]，每棵树的格式见DoubleArrayTrie.write
+     * @param imagePath 镜像文件路径
+     */
+    public void save(String imagePath) throws IOException {
+        if (!(forward instanceof DoubleArrayTrie) || !(backward instanceof DoubleArrayTrie)) {
+            throw new IllegalStateException("只有从词表构建的词典索引才能写出镜像");
+        }
+        // 先写临时文件再改名，避免别的进程映射到写了一半的镜像；
+        // 临时文件名各不相同，多个进程同时构建时不会写到同一个文件里
+        Path target = Paths.get(imagePath).toAbsolutePath();
+        Path tmp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(maxWordLength);
+                ((DoubleArrayTrie) forward).write(out);
+                ((DoubleArrayTrie) backward).write(out);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);  // 写入或改名失败时不留下临时文件
+        }
+    }
+
+    @Override
+    public int searchLongestPrefix(CharSequence text, int from, int maxLen) {
+        return forward.searchLongestPrefix(text, from, maxLen);
+    }
+
+    /**
+     * 查找text中以end结尾、长度不超过maxLen的最长词
+     * @return 最长匹配词的长度，没有匹配时返回0
+     */
+    public int searchLongestSuffix(CharSequence text, int end, int maxLen) {
+        return backward.searchLongestSuffix(text, end, maxLen);
+    }
+
+    public int maxWordLength() {
+        return maxWordLength;
+    }
+
+    private static List<String> readWords(String path) {
+        List<String> words = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))){
+            String line;
+            while ((line = br.readLine()) != null)
+                words.add(line);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return words;
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 可热更新的词典持有者
+ * 新词典在后台线程构建，构建完成后用一次原子引用替换发布。
+ * 读者每句话取一次当前词典（一次volatile读，不加锁）：
+ * 正在分的句子用旧词典分完，之后的句子用新词典，分词不停顿。
+ */
+class LexiconHolder implements Supplier<Lexicon>, AutoCloseable {
+    private final String path;
+    private final AtomicReference<Lexicon> current;
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "lexicon-reloader");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile FileTime loadedTime;  // 当前词典对应的词典文件修改时间
+    private volatile int version = 1;      // 每发布一次新词典加1
+    private FileTime failedTime;            // 上次重建失败时词典文件的修改时间，只在后台线程上读写
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * 同步构建第一个版本的词典
+     * @param path 词典文件路径，每行一个词
+     */
+    public LexiconHolder(String path) {
+        this.path = path;
+        this.loadedTime = modifiedTime();
+        this.current = new AtomicReference<>(Lexicon.open(path));
+    }
+
+    /**
+     * 当前词典，分词时每句话调用一次
+     */
+    @Override
+    public Lexicon get() {
+        return current.get();
+    }
+
+    /**
+     * 在后台重新构建词典并发布
+     * @return 新词典发布后完成的Future
+     */
+    public Future<Lexicon> reload() {
+        return background.submit(this::rebuild);
+    }
+
+    /**
+     * 定期检查词典文件，修改时间变化就在后台重建
+     * 重建失败（文件读不了、写了一半等）时保留当前词典，等文件再次修改后重试，之后的检查照常进行
+     * @param period 检查间隔
+     * @param unit 时间单位
+     */
+    public void watch(long period, TimeUnit unit) {
+        background.scheduleWithFixedDelay(() -> {
+            // 异常若抛出任务，scheduleWithFixedDelay会取消之后所有的检查
+            try {
+                if (!Files.exists(Paths.get(path))) return;  // 编辑器保存时可能短暂不存在
+                FileTime time = modifiedTime();
+                if (time.equals(loadedTime) || time.equals(failedTime)) return;
+                try {
+                    rebuild();
+                } catch (RuntimeException e) {
+                    failedTime = time;
+                    throw e;
+                }
+            } catch (RuntimeException e) {
+                System.err.println("词典更新失败，继续使用第" + version + "版：" + e);
+            }
+        }, period, period, unit);
+    }
+
+    /**
+     * 注册新词典发布后的回调，如清空分词结果缓存
+     * @param listener 回调，在后台线程上执行
+     */
+    public void onReload(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    // 只在后台线程上运行，所以重建之间不会互相覆盖
+    private Lexicon rebuild() {
+        FileTime time = modifiedTime();
+        Lexicon next = Lexicon.open(path);
+        current.set(next);
+        loadedTime = time;
+        version++;
+        for (Runnable listener : listeners) listener.run();
+        return next;
+    }
+
+    private FileTime modifiedTime() {
+        try {
+            return Files.getLastModifiedTime(Paths.get(path));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public int version() {
+        return version;
+    }
+
+    @Override
+    public void close() {
+        background.shutdownNow();
+    }
+}
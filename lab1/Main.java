@@ -1,5 +1,6 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 class TrieNode{
     HashMap<Character, TrieNode> children;  // 用HashMap来存储下一层的孩子结点
@@ -11,7 +12,7 @@ class TrieNode{
     }
 }
 
-class Trie {
+class Trie implements WordDict {
     TrieNode root;
     public Trie() {
         root = new TrieNode();
@@ -37,18 +38,27 @@ class Trie {
      * @return 最长前缀的词，当str中没有树中的词时返回null
      */
     public String searchLongestPrefix(String str) {
+        int len = searchLongestPrefix(str, 0, str.length());
+        return len == 0 ? null : str.substring(0, len);
+    }
+
+    /**
+     * 在Trie树中查找text从from开始的最长词，只沿下标走，不拼接字符串
+     * @param text 待分词的文本
+     * @param from 匹配起点下标
+     * @param maxLen 最大匹配长度
+     * @return 最长匹配词的长度，没有匹配时返回0
+     */
+    @Override
+    public int searchLongestPrefix(CharSequence text, int from, int maxLen) {
         TrieNode node = root;
-        String res = null;
-        StringBuilder sb = new StringBuilder();
-        for (char c : str.toCharArray()) {
-            if (node.children.containsKey(c)) {
-                sb.append(c);
-                node = node.children.get(c);
-                if (node.isEnd) {
-                    res = sb.toString();
-                }
-            } else {
-                break;
+        int res = 0;
+        int end = Math.min(text.length(), from + maxLen);
+        for (int i = from; i < end; i++) {
+            node = node.children.get(text.charAt(i));
+            if (node == null) break;
+            if (node.isEnd) {
+                res = i - from + 1;
             }
         }
         return res;
@@ -86,69 +96,137 @@ public class Main {
         return res;
     }
 
-    public static void main(String[] args) {
-        // 读取corpus.dict.txt文件 - 所有词汇读入dict列表
-        Trie dict = new Trie();
-        // 在圆括号里写初始化可以不用手动br.close()
-        try (BufferedReader br = new BufferedReader(new FileReader("corpus.dict.txt"))){
-            String line;
-            while ((line = br.readLine()) != null)
-                dict.insert(line);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * 前向最大匹配算法（按下标切分版）
+     * 在原文上按下标前进，结果以[start, end)边界对写入可复用的缓冲区，不产生任何子串
+     * @param text 待分词的文本
+     * @param dict 词典
+     * @param maxLen 最大匹配长度
+     * @param out 分词结果缓冲区，调用时先被清空
+     * @return 分出的词数
+     */
+    public static int fmm(CharSequence text, WordDict dict, int maxLen, TokenBuffer out) {
+        out.clear();
+        int pos = 0;
+        int n = text.length();
+        while (pos < n) {
+            int len = dict.searchLongestPrefix(text, pos, maxLen);
+            // 没有找到，就取第一个字
+            if (len == 0) len = 1;
+            out.add(pos, pos + len);
+            pos += len;
         }
+        return out.size();
+    }
 
-        // 读取corpus.sentence.txt文件 - 所有句子读入sentences列表
-        List<String> sentences = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader("corpus.sentence.txt"))){
-            String line;
-            while ((line = br.readLine()) != null)
-                sentences.add(line);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * 逆向最大匹配算法（按下标切分版）
+     * 从句尾往前，每次在逆向Trie树中找以当前位置结尾的最长词
+     * @param text 待分词的文本
+     * @param dict 词典索引（需要其中的逆向Trie树）
+     * @param maxLen 最大匹配长度
+     * @param out 分词结果缓冲区，调用时先被清空，结果按正常词序排列
+     * @return 分出的词数
+     */
+    public static int rmm(CharSequence text, Lexicon dict, int maxLen, TokenBuffer out) {
+        out.clear();
+        int pos = text.length();
+        while (pos > 0) {
+            int len = dict.searchLongestSuffix(text, pos, maxLen);
+            // 没有找到，就取最后一个字
+            if (len == 0) len = 1;
+            out.add(pos - len, pos);
+            pos -= len;
         }
+        out.reverse();
+        return out.size();
+    }
 
-        // 读取cn_stopwords.txt - 所有停止词读入stopwords数组
-        List<String> stopwords = new ArrayList<>();
-        try (BufferedReader br = new BufferedReader(new FileReader("cn_stopwords.txt"))){
-            String line;
-            while ((line = br.readLine()) != null)
-                stopwords.add(line);
-        } catch (IOException e) {
-            throw new RuntimeException(e);
+    /**
+     * 双向最大匹配算法
+     * 同一句话分别做FMM与RMM，取词数更少的结果；词数相同时取单字更少的，仍相同时取RMM
+     * @param text 待分词的文本
+     * @param dict 词典索引
+     * @param maxLen 最大匹配长度
+     * @param out 分词结果缓冲区，调用时先被清空
+     * @param scratch 存放RMM结果的临时缓冲区，可复用
+     * @return 分出的词数
+     */
+    public static int bimm(CharSequence text, Lexicon dict, int maxLen, TokenBuffer out, TokenBuffer scratch) {
+        int forwardCount = fmm(text, dict, maxLen, out);
+        int backwardCount = rmm(text, dict, maxLen, scratch);
+        if (backwardCount < forwardCount
+                || backwardCount == forwardCount && singleChars(scratch) <= singleChars(out)) {
+            out.copyFrom(scratch);
+        }
+        return out.size();
+    }
+
+    // 单字词的个数
+    private static int singleChars(TokenBuffer tokens) {
+        int count = 0;
+        for (int i = 0; i < tokens.size(); i++) {
+            if (tokens.end(i) - tokens.start(i) == 1) count++;
+        }
+        return count;
+    }
+
+    public static void main(String[] args) {
+        // 命令行参数：[fmm|rmm|bimm|dag] [最大匹配长度] [缓存句子数]
+        // 默认正向匹配、最大匹配长度取词典中最长词的长度、不缓存分词结果
+        String modeName = args.length >= 1 ? args[0] : "fmm";
+        int maxLen = args.length >= 2 ? Integer.parseInt(args[1]) : 0;
+        int cacheSize = args.length >= 3 ? Integer.parseInt(args[2]) : 0;
+
+        Segmenter segmenter;
+        LexiconHolder dict = null;
+        if (modeName.equalsIgnoreCase("dag")) {
+            // 词图最短路分词：Aho-Corasick自动机一遍扫描出所有词典词
+            segmenter = new DagSegmenter(AhoCorasick.load("corpus.dict.txt"));
+        } else {
+            // 读取corpus.dict.txt文件 - 正向与逆向两棵Trie树只在第一次运行时构建，
+            // 之后直接内存映射corpus.dict.txt.img；运行中词典文件有改动时在后台重建并替换
+            dict = new LexiconHolder("corpus.dict.txt");
+            dict.watch(5, TimeUnit.SECONDS);
+            segmenter = new MaxMatch(dict, MaxMatch.Mode.valueOf(modeName.toUpperCase()), maxLen);
         }
+        // 重复的句子直接取缓存的切分；词典更新后清空缓存
+        SegmentCache cache = null;
+        if (cacheSize > 0) {
+            cache = new SegmentCache(segmenter, cacheSize);
+            if (dict != null) dict.onReload(cache::clear);
+            segmenter = cache;
+        }
+
+        // 读取cn_stopwords.txt - 所有停止词建成双数组Trie树，按区间O(词长)判断
+        DoubleArrayTrie stopwords = DoubleArrayTrie.load("cn_stopwords.txt");
 
         // 调用函数
-        // 词频映射
-        Map<String, Integer> wordCount = new HashMap<>();
-        int totalWords = 0; // 统计总词数
-        // 处理句子并写入结果
-        try (BufferedWriter bw = new BufferedWriter(new FileWriter("result.txt", false))){
-            // 打印分词结果到result.txt文件
-            for (String sentence : sentences) {
-                List<String> words = fmm(sentence, dict, 7);
-                for (String word : words) {
-                    bw.write(word + "/");
-                    // 过滤停用词，统计词频
-                    if (!stopwords.contains(word)) {
-                        wordCount.put(word, wordCount.getOrDefault(word, 0) + 1);
-                        totalWords++;
-                    }
-                }
-                bw.newLine();
-            }
+        // 词频统计：每个分词线程各自计数，结束后合并
+        WordFrequency frequency = new WordFrequency(stopwords);
+        // 流式读入句子，多线程分词，按原顺序把结果写入result.txt
+        int threads = Runtime.getRuntime().availableProcessors();
+        try (BufferedReader br = new BufferedReader(new FileReader("corpus.sentence.txt"));
+             BufferedWriter bw = new BufferedWriter(new FileWriter("result.txt", false));
+             SegmentPipeline pipeline = new SegmentPipeline(segmenter, threads)){
+            pipeline.setSink(frequency);
+            pipeline.run(br, bw);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        // 输出前词频10
-        List<Map.Entry<String, Integer>> sortedEntries = new ArrayList<>(wordCount.entrySet());
-        sortedEntries.sort((e1, e2) -> e2.getValue().compareTo(e1.getValue()));
+        if (cache != null) {
+            System.out.println("分词缓存：" + cache);
+        }
+        TermCounter wordCount = frequency.merge();
+        long totalWords = wordCount.total(); // 总词数
+        // 输出前词频10，用小顶堆取前10，不对全部词排序
+        List<Map.Entry<String, Integer>> topEntries = wordCount.topK(10);
         try (BufferedWriter bw = new BufferedWriter(new FileWriter("result_freq.json", false))){
             // 词频统计，写成字典格式到result_freq.json文件（除以总词数，得到词频）
             bw.write("{\n");
-            for (int i = 0; i < 10; i++) {
-                Map.Entry<String, Integer> entry = sortedEntries.get(i);
-                bw.write("\t\"" + entry.getKey() + "\": " + (double)entry.getValue() / totalWords + (i == 9 ? "" : ",\n"));
+            for (int i = 0; i < topEntries.size(); i++) {
+                Map.Entry<String, Integer> entry = topEntries.get(i);
+                bw.write("\t\"" + entry.getKey() + "\": " + (double)entry.getValue() / totalWords + (i == topEntries.size() - 1 ? "" : ",\n"));
             }
             bw.write("\n}");
         } catch (IOException e) {
@@ -0,0 +1,80 @@
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * 直接在内存映射的二进制镜像上查找的双数组Trie树
+ * 镜像由DoubleArrayTrie.write写出，打开时不复制、不重建，查找直接读映射的页，
+ * 同一台机器上的多个JVM打开同一个文件时共享操作系统的页缓存。
+ * 只用绝对下标读取缓冲区，可被多个线程同时使用。
+ */
+class MappedDoubleArrayTrie implements WordDict, SuffixDict {
+    private static final int ALPHABET = Character.MAX_VALUE + 1;
+
+    private final int size;
+    private final IntBuffer charCode;
+    private final IntBuffer base;
+    private final IntBuffer check;
+    private final ByteBuffer isEnd;
+    private final int byteLength;  // 本段镜像占用的字节数
+
+    /**
+     * @param image 整个镜像文件的映射
+     * @param offset 本段在镜像中的起始字节
+     */
+    public MappedDoubleArrayTrie(ByteBuffer image, int offset) {
+        size = image.getInt(offset);
+        int pos = offset + 4;
+        charCode = view(image, pos, ALPHABET * 4).asIntBuffer();
+        pos += ALPHABET * 4;
+        base = view(image, pos, size * 4).asIntBuffer();
+        pos += size * 4;
+        check = view(image, pos, size * 4).asIntBuffer();
+        pos += size * 4;
+        isEnd = view(image, pos, size);
+        pos += (size + 3) / 4 * 4;
+        byteLength = pos - offset;
+    }
+
+    // 取镜像中[pos, pos + len)这一段，作为独立的缓冲区视图
+    private static ByteBuffer view(ByteBuffer image, int pos, int len) {
+        ByteBuffer dup = image.duplicate();
+        dup.position(pos).limit(pos + len);
+        return dup.slice();
+    }
+
+    @Override
+    public int searchLongestPrefix(CharSequence text, int from, int maxLen) {
+        int s = 0;
+        int matched = 0;
+        int end = Math.min(text.length(), from + maxLen);
+        for (int i = from; i < end; i++) {
+            int code = charCode.get(text.charAt(i));
+            if (code == 0) break;
+            int t = base.get(s) + code;
+            if (t >= size || check.get(t) != s) break;
+            s = t;
+            if (isEnd.get(s) != 0) matched = i - from + 1;
+        }
+        return matched;
+    }
+
+    @Override
+    public int searchLongestSuffix(CharSequence text, int end, int maxLen) {
+        int s = 0;
+        int matched = 0;
+        int from = Math.max(0, end - maxLen);
+        for (int i = end - 1; i >= from; i--) {
+            int code = charCode.get(text.charAt(i));
+            if (code == 0) break;
+            int t = base.get(s) + code;
+            if (t >= size || check.get(t) != s) break;
+            s = t;
+            if (isEnd.get(s) != 0) matched = end - i;
+        }
+        return matched;
+    }
+
+    public int byteLength() {
+        return byteLength;
+    }
+}
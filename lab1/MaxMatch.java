@@ -0,0 +1,50 @@
+import java.util.function.Supplier;
+
+/**
+ * 最大匹配分词器：正向（FMM）、逆向（RMM）、双向（BiMM）共用同一个词典索引
+ * 每句话开始时取一次词典，词典热更新时正在分的句子不受影响。
+ */
+class MaxMatch implements Segmenter {
+    enum Mode { FMM, RMM, BIMM }
+
+    private final Supplier<Lexicon> lexicon;
+    private final Mode mode;
+    private final int maxLen;  // 小于等于0时取当前词典中最长词的长度
+    private final ThreadLocal<TokenBuffer> scratch = ThreadLocal.withInitial(TokenBuffer::new);  // BiMM的逆向结果
+
+    /**
+     * @param lexicon 词典索引
+     * @param mode 匹配方式
+     * @param maxLen 最大匹配长度，小于等于0时取词典中最长词的长度
+     */
+    public MaxMatch(Lexicon lexicon, Mode mode, int maxLen) {
+        this(() -> lexicon, mode, maxLen);
+    }
+
+    /**
+     * @param lexicon 词典来源，如可热更新的LexiconHolder
+     * @param mode 匹配方式
+     * @param maxLen 最大匹配长度，小于等于0时取词典中最长词的长度
+     */
+    public MaxMatch(Supplier<Lexicon> lexicon, Mode mode, int maxLen) {
+        this.lexicon = lexicon;
+        this.mode = mode;
+        this.maxLen = maxLen;
+    }
+
+    @Override
+    public void segment(CharSequence text, TokenBuffer out) {
+        Lexicon dict = lexicon.get();
+        int len = maxLen > 0 ? maxLen : dict.maxWordLength();
+        switch (mode) {
+            case FMM:
+                Main.fmm(text, dict, len, out);
+                break;
+            case RMM:
+                Main.rmm(text, dict, len, out);
+                break;
+            default:
+                Main.bimm(text, dict, len, out, scratch.get());
+        }
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.ToIntFunction;
+
+/**
+ * 分词基准测试
+ * 与TimeTest只计一次时不同：每个用例先预热若干轮让JIT编译完成，再测量多轮取均值与标准差，
+ * 报告吞吐量（字符/秒）和分配速率（字节/字符，MB/秒），并在不同语料规模与maxLen下各跑一遍。
+ * 用法：java SegmentBench [语料倍数,逗号分隔] [maxLen,逗号分隔] [预热轮数] [测量轮数]
+ */
+public class SegmentBench {
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private static volatile long sink;  // 吞掉分词结果，防止被JIT当作死代码消除
+
+    public static void main(String[] args) {
+        int[] scales = parseInts(args.length >= 1 ? args[0] : "1,10");
+        int[] maxLens = parseInts(args.length >= 2 ? args[1] : "4,7,10");
+        int warmup = args.length >= 3 ? Integer.parseInt(args[2]) : 5;
+        int iterations = args.length >= 4 ? Integer.parseInt(args[3]) : 10;
+
+        List<String> words = readLines("corpus.dict.txt");
+        List<String> sentences = readLines("corpus.sentence.txt");
+
+        // 三种TimeTest中的词典结构，外加按下标切分的双数组Trie树版
+        List<String> list = new ArrayList<>(words);
+        HashMap<Integer, List<String>> dictMap = new HashMap<>();
+        Trie trie = new Trie();
+        for (String w : words) {
+            dictMap.computeIfAbsent(w.length(), k -> new ArrayList<>()).add(w);
+            trie.insert(w);
+        }
+        DoubleArrayTrie dat = new DoubleArrayTrie();
+        dat.build(words);
+        TokenBuffer tokens = new TokenBuffer();
+
+        System.out.printf("%-22s %6s %6s %16s %10s %12s %12s%n",
+                "variant", "scale", "maxLen", "chars/s", "±%", "alloc B/char", "alloc MB/s");
+        for (int scale : scales) {
+            // 语料按倍数重复，模拟更大的输入
+            List<String> corpus = new ArrayList<>();
+            for (int i = 0; i < scale; i++) corpus.addAll(sentences);
+            long chars = 0;
+            for (String s : corpus) chars += s.length();
+
+            for (int maxLen : maxLens) {
+                run("ArrayList", corpus, chars, scale, maxLen, warmup, iterations,
+                        s -> TimeTest.fmm(s, list, maxLen).size());
+                run("Length-bucketed", corpus, chars, scale, maxLen, warmup, iterations,
+                        s -> TimeTest.fmm(s, dictMap, maxLen).size());
+                run("Trie", corpus, chars, scale, maxLen, warmup, iterations,
+                        s -> TimeTest.fmm(s, trie, maxLen).size());
+                run("Offset Double-Array", corpus, chars, scale, maxLen, warmup, iterations,
+                        s -> Main.fmm(s, dat, maxLen, tokens));
+            }
+        }
+    }
+
+    /**
+     * 跑一个用例：预热warmup轮，再测量iterations轮，每轮把整个语料分词一遍
+     */
+    private static void run(String name, List<String> corpus, long chars, int scale, int maxLen,
+                            int warmup, int iterations, ToIntFunction<String> fmm) {
+        for (int i = 0; i < warmup; i++) {
+            pass(corpus, fmm);
+        }
+        double[] rates = new double[iterations];
+        long totalNanos = 0;
+        long totalBytes = 0;
+        long tid = Thread.currentThread().getId();
+        for (int i = 0; i < iterations; i++) {
+            long bytes = THREADS.getThreadAllocatedBytes(tid);
+            long start = System.nanoTime();
+            pass(corpus, fmm);
+            long nanos = System.nanoTime() - start;
+            totalBytes += THREADS.getThreadAllocatedBytes(tid) - bytes;
+            totalNanos += nanos;
+            rates[i] = chars * 1e9 / nanos;
+        }
+        double mean = 0;
+        for (double r : rates) mean += r;
+        mean /= iterations;
+        double var = 0;
+        for (double r : rates) var += (r - mean) * (r - mean);
+        double error = iterations > 1 ? Math.sqrt(var / (iterations - 1)) / mean * 100 : 0;
+
+        double bytesPerChar = (double) totalBytes / (chars * iterations);
+        double mbPerSec = totalBytes / (totalNanos / 1e9) / (1024 * 1024);
+        System.out.printf("%-22s %6d %6d %16.0f %10.1f %12.1f %12.1f%n",
+                name, scale, maxLen, mean, error, bytesPerChar, mbPerSec);
+    }
+
+    private static void pass(List<String> corpus, ToIntFunction<String> fmm) {
+        long count = 0;
+        for (String s : corpus) count += fmm.applyAsInt(s);
+        sink += count;
+    }
+
+    private static List<String> readLines(String path) {
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(path))){
+            String line;
+            while ((line = br.readLine()) != null)
+                lines.add(line);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return lines;
+    }
+
+    private static int[] parseInts(String csv) {
+        return Arrays.stream(csv.split(",")).map(String::trim).mapToInt(Integer::parseInt).toArray();
+    }
+}
@@ -0,0 +1,107 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 分词结果缓存：放在分词器前面，重复出现的句子直接返回上次的切分
+ * 按句子的哈希值分成若干段，每段一个按访问顺序排列的LinkedHashMap（LRU），各段独立加锁，
+ * 多线程并发使用时只在同一段上竞争。缓存的值是紧凑的词边界数组。
+ * 词典更新后clear()清空缓存并推进代数；开始分词时的代数与写入时不同的结果（可能是用旧词典分的）不写入缓存。
+ */
+class SegmentCache implements Segmenter {
+    private final Segmenter delegate;
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final AtomicLong generation = new AtomicLong();  // 每次clear()加1
+
+    /**
+     * @param delegate 实际做分词的分词器
+     * @param capacity 最多缓存的句子数
+     */
+    public SegmentCache(Segmenter delegate, int capacity) {
+        this.delegate = delegate;
+        // 段数取2的幂，不超过容量，也不超过64
+        int n = Integer.highestOneBit(Math.max(1, Math.min(Math.min(64, capacity),
+                Runtime.getRuntime().availableProcessors() * 4)));
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / n));
+        }
+    }
+
+    @Override
+    public void segment(CharSequence text, TokenBuffer out) {
+        String key = text.toString();
+        Segment segment = segments[(key.hashCode() ^ (key.hashCode() >>> 16)) & (segments.length - 1)];
+        int[] cached;
+        synchronized (segment) {
+            cached = segment.get(key);
+        }
+        if (cached != null) {
+            hits.increment();
+            out.copyFrom(cached);
+            return;
+        }
+        misses.increment();
+        // 先记下代数再分词：分词用的若是旧词典，词典发布后的clear()一定在此之后，写入前能发现代数变了
+        long started = generation.get();
+        // 分词不在锁内进行；两个线程同时未命中同一句时各分一次，结果相同
+        delegate.segment(text, out);
+        int[] bounds = out.toArray();
+        synchronized (segment) {
+            // 与clear()在同一把段锁上检查：代数未变时写入的项，之后的clear()仍会清掉
+            if (generation.get() == started) segment.put(key, bounds);
+        }
+    }
+
+    // 清空缓存，词典更新后调用；先推进代数，正在分词的线程就不会再写入旧结果
+    public void clear() {
+        generation.incrementAndGet();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        long h = hits(), m = misses();
+        return String.format("hits=%d, misses=%d, evictions=%d, hit rate=%.2f%%",
+                h, m, evictions(), h + m == 0 ? 0.0 : h * 100.0 / (h + m));
+    }
+
+    // 一段LRU缓存，超过容量时淘汰最久未访问的句子
+    private class Segment extends LinkedHashMap<String, int[]> {
+        private static final long serialVersionUID = 1L;
+        private final int capacity;
+
+        Segment(int capacity) {
+            super(16, 0.75f, true);
+            this.capacity = capacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            if (size() > capacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 流式并行分词流水线
+ * 按批读入句子，交给线程池分词，再按输入顺序写回结果。
+ * 同时在途的批数有上限，内存占用只与 批大小 × 在途批数 有关，与语料总大小无关。
+ * 分词器与词典只读，被所有工作线程共享。
+ */
+class SegmentPipeline implements AutoCloseable {
+    private final Segmenter segmenter;
+    private final int batchLines;   // 每批最多的句子数
+    private final int batchChars;   // 每批最多的字符数，防止超长行把一批撑得过大
+    private final int maxInFlight;  // 同时在途的批数上限
+    private final ExecutorService pool;
+    private final ThreadLocal<TokenBuffer> buffers = ThreadLocal.withInitial(TokenBuffer::new);
+    private TokenSink sink;
+
+    public SegmentPipeline(WordDict dict, int maxLen, int threads) {
+        this((text, out) -> Main.fmm(text, dict, maxLen, out), threads);
+    }
+
+    public SegmentPipeline(Segmenter segmenter, int threads) {
+        this(segmenter, threads, 1024, 1 << 20);
+    }
+
+    public SegmentPipeline(Segmenter segmenter, int threads, int batchLines, int batchChars) {
+        this.segmenter = segmenter;
+        this.batchLines = batchLines;
+        this.batchChars = batchChars;
+        this.maxInFlight = threads * 2;  // 每个线程手上一批，队列里再备一批
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "segment-worker");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 设置分词结果的额外消费者（如词频统计），在工作线程上调用
+     * @param sink 消费者，为null时不做额外处理
+     * @return this
+     */
+    public SegmentPipeline setSink(TokenSink sink) {
+        this.sink = sink;
+        return this;
+    }
+
+    /**
+     * 从in逐行读入句子，分词后按原顺序写入out，每个词后跟"/"，每句一行
+     * @param in 输入
+     * @param out 输出
+     */
+    public void run(BufferedReader in, Writer out) throws IOException {
+        Deque<Future<String>> inFlight = new ArrayDeque<>();
+        List<String> batch = new ArrayList<>();
+        int chars = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            batch.add(line);
+            chars += line.length();
+            if (batch.size() >= batchLines || chars >= batchChars) {
+                submit(batch, inFlight, out);
+                batch = new ArrayList<>();
+                chars = 0;
+            }
+        }
+        if (!batch.isEmpty()) {
+            submit(batch, inFlight, out);
+        }
+        // 按提交顺序写出剩余的批
+        while (!inFlight.isEmpty()) {
+            out.write(await(inFlight.poll()));
+        }
+        out.flush();
+    }
+
+    // 提交一批；在途批数达到上限时，先等最早的一批完成并写出（反压）
+    private void submit(List<String> batch, Deque<Future<String>> inFlight, Writer out) throws IOException {
+        if (inFlight.size() >= maxInFlight) {
+            out.write(await(inFlight.poll()));
+        }
+        inFlight.add(pool.submit(() -> segmentBatch(batch)));
+    }
+
+    private String segmentBatch(List<String> batch) {
+        TokenBuffer tokens = buffers.get();
+        StringBuilder sb = new StringBuilder();
+        for (String sentence : batch) {
+            segmenter.segment(sentence, tokens);
+            for (int i = 0; i < tokens.size(); i++) {
+                sb.append(sentence, tokens.start(i), tokens.end(i)).append('/');
+            }
+            sb.append(System.lineSeparator());
+            if (sink != null) {
+                sink.accept(sentence, tokens);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String await(Future<String> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * 分词器接口，结果以词边界写入TokenBuffer。实现须可被多个线程同时调用
+ */
+interface Segmenter {
+    /**
+     * @param text 待分词的文本
+     * @param out 分词结果缓冲区，调用时先被清空
+     */
+    void segment(CharSequence text, TokenBuffer out);
+}
@@ -0,0 +1,13 @@
+/**
+ * 逆向匹配用的词典接口：按下标从后往前做最长后缀匹配，不产生子串
+ */
+interface SuffixDict {
+    /**
+     * 查找text中以end结尾、长度不超过maxLen的最长词
+     * @param text 待分词的文本
+     * @param end 匹配终点下标（不含）
+     * @param maxLen 最大匹配长度
+     * @return 最长匹配词的长度，没有匹配时返回0
+     */
+    int searchLongestSuffix(CharSequence text, int end, int maxLen);
+}
@@ -0,0 +1,152 @@
+import java.util.*;
+
+/**
+ * 词频计数器：开放寻址哈希表，键为词、值为int计数
+ * 按原文区间计数，只有第一次见到某个词时才创建String，计数本身不装箱。
+ * 非线程安全，每个线程各用一个，最后再merge。
+ */
+class TermCounter {
+    private String[] keys;
+    private int[] hashes;
+    private int[] counts;
+    private int size;   // 不同词的个数
+    private long total; // 计入的总词数
+
+    public TermCounter() {
+        this(1024);
+    }
+
+    public TermCounter(int capacity) {
+        int cap = Integer.highestOneBit(Math.max(16, capacity) - 1) << 1;
+        keys = new String[cap];
+        hashes = new int[cap];
+        counts = new int[cap];
+    }
+
+    /**
+     * 计数text的[start, end)区间对应的词
+     */
+    public void add(CharSequence text, int start, int end) {
+        // 与String.hashCode相同的算法，合并时可以直接用key.hashCode()
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + text.charAt(i);
+        int mask = keys.length - 1;
+        int len = end - start;
+        for (int slot = mix(h) & mask; ; slot = (slot + 1) & mask) {
+            String key = keys[slot];
+            if (key == null) {
+                insert(slot, text.subSequence(start, end).toString(), h, 1);
+                break;
+            }
+            if (hashes[slot] == h && key.length() == len && regionEquals(key, text, start)) {
+                counts[slot]++;
+                break;
+            }
+        }
+        total++;
+    }
+
+    /**
+     * 把另一个计数器的结果累加进来
+     */
+    public void merge(TermCounter other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            String key = other.keys[i];
+            if (key == null) continue;
+            int h = other.hashes[i];
+            int mask = keys.length - 1;
+            for (int slot = mix(h) & mask; ; slot = (slot + 1) & mask) {
+                if (keys[slot] == null) {
+                    insert(slot, key, h, other.counts[i]);
+                    break;
+                }
+                if (hashes[slot] == h && keys[slot].equals(key)) {
+                    counts[slot] += other.counts[i];
+                    break;
+                }
+            }
+        }
+        total += other.total;
+    }
+
+    /**
+     * 用大小为k的小顶堆取出现次数最多的k个词，不对全部词排序
+     * @param k 取前k个
+     * @return 按次数从大到小排列的词及其次数，次数相同按词的字典序
+     */
+    public List<Map.Entry<String, Integer>> topK(int k) {
+        Comparator<Map.Entry<String, Integer>> byCount = Map.Entry.<String, Integer>comparingByValue()
+                .thenComparing(Map.Entry.<String, Integer>comparingByKey().reversed());
+        PriorityQueue<Map.Entry<String, Integer>> heap = new PriorityQueue<>(byCount);
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] == null) continue;
+            if (heap.size() < k) {
+                heap.offer(new AbstractMap.SimpleEntry<>(keys[i], counts[i]));
+            } else if (k > 0 && (counts[i] > heap.peek().getValue()
+                    || counts[i] == heap.peek().getValue() && keys[i].compareTo(heap.peek().getKey()) < 0)) {
+                heap.poll();
+                heap.offer(new AbstractMap.SimpleEntry<>(keys[i], counts[i]));
+            }
+        }
+        List<Map.Entry<String, Integer>> res = new ArrayList<>();
+        while (!heap.isEmpty()) res.add(heap.poll());
+        Collections.reverse(res);  // 堆顶是最小的，需要反转
+        return res;
+    }
+
+    public int get(String word) {
+        int h = word.hashCode();
+        int mask = keys.length - 1;
+        for (int slot = mix(h) & mask; keys[slot] != null; slot = (slot + 1) & mask) {
+            if (hashes[slot] == h && keys[slot].equals(word)) return counts[slot];
+        }
+        return 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    private void insert(int slot, String key, int h, int count) {
+        keys[slot] = key;
+        hashes[slot] = h;
+        counts[slot] = count;
+        // 装载因子超过1/2时扩容
+        if (++size * 2 > keys.length) rehash();
+    }
+
+    private void rehash() {
+        String[] oldKeys = keys;
+        int[] oldHashes = hashes;
+        int[] oldCounts = counts;
+        keys = new String[oldKeys.length * 2];
+        hashes = new int[oldKeys.length * 2];
+        counts = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            int slot = mix(oldHashes[i]) & mask;
+            while (keys[slot] != null) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            hashes[slot] = oldHashes[i];
+            counts[slot] = oldCounts[i];
+        }
+    }
+
+    private static boolean regionEquals(String key, CharSequence text, int start) {
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) != text.charAt(start + i)) return false;
+        }
+        return true;
+    }
+
+    // 打散哈希值，避免线性探测时聚集
+    private static int mix(int h) {
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -67,6 +67,34 @@ public class TimeTest {
         return res;
     }
 
+    /**
+     * 前向最大匹配算法 双数组Trie树版
+     * @param str 待分词的字符串
+     * @param dict 词典双数组Trie树对象
+     * @param maxLen 最大匹配长度
+     * @return 分词后的字符串的列表
+     */
+    public static List<String> fmm(String str, DoubleArrayTrie dict, int maxLen) {
+        // 初始条件，待处理字符串为整个字符串
+        String remainder = str;
+        List<String> res = new ArrayList<>();
+        while (remainder.length() > 0) {
+            // 取前maxLen个字符作为匹配词
+            String cur = remainder.substring(0, Math.min(maxLen, remainder.length()));
+            // 在双数组Trie树中查找最长前缀的词
+            String longestPrefix = dict.searchLongestPrefix(cur);
+            if (longestPrefix != null) {
+                res.add(longestPrefix);
+                remainder = remainder.substring(longestPrefix.length());
+            } else {
+                // 没有找到，就取第一个字
+                res.add(cur.substring(0, 1));
+                remainder = remainder.substring(1);
+            }
+        }
+        return res;
+    }
+
     /**
      * 前向最大匹配算法 优化版 按字数分割词典
      * @param str 待分词的字符串
@@ -118,6 +146,8 @@ public class TimeTest {
         version1();
         version2();
         version3();
+        version4();
+        version5();
     }
 
     public static void version1(){
@@ -258,4 +288,94 @@ public class TimeTest {
         }
     }
 
+    public static void version4(){
+        // 同一份词典分别构建HashMap结点的Trie树与双数组Trie树，各自只构建一次
+        Trie trie = new Trie();
+        try (BufferedReader br = new BufferedReader(new FileReader("corpus.dict.txt"))){
+            String line;
+            while ((line = br.readLine()) != null)
+                trie.insert(line);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        DoubleArrayTrie dat = DoubleArrayTrie.load("corpus.dict.txt");
+
+        // 读取corpus.sentence.txt文件 - 所有句子读入sentences列表
+        List<String> sentences = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader("corpus.sentence.txt"))){
+            String line;
+            while ((line = br.readLine()) != null)
+                sentences.add(line);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+
+        // 对照计时：同一批句子分别用两种结构分词
+        long start = System.nanoTime();
+        for (String sentence : sentences) {
+            List<String> words = fmm(sentence, trie, 7);
+        }
+        long mid = System.nanoTime();
+        for (String sentence : sentences) {
+            List<String> words = fmm(sentence, dat, 7);
+        }
+        long end = System.nanoTime();
+        System.out.println("Version 4 (Trie vs Double-Array Trie): Trie " + (mid - start) / 1000000000.0
+                + "s, Double-Array Trie " + (end - mid) / 1000000000.0 + "s, array length " + dat.size);
+
+        // 将结果写入文件-用于验证，同时检查两种结构分词结果一致
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter("timetest_v4.txt", false))){
+            for (String sentence : sentences) {
+                List<String> words = fmm(sentence, dat, 7);
+                if (!words.equals(fmm(sentence, trie, 7))) {
+                    System.out.println("分词结果不一致：" + sentence);
+                }
+                for (String word : words) {
+                    bw.write(word + "/");
+                }
+                bw.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public static void version5(){
+        // 按下标切分版：词典查找返回匹配长度，结果写入可复用的TokenBuffer，分词过程中不产生子串
+        DoubleArrayTrie dict = DoubleArrayTrie.load("corpus.dict.txt");
+
+        // 读取corpus.sentence.txt文件 - 所有句子读入sentences列表
+        List<String> sentences = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader("corpus.sentence.txt"))){
+            String line;
+            while ((line = br.readLine()) != null)
+                sentences.add(line);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        TokenBuffer tokens = new TokenBuffer();
+        // 开始计时（用最精确的计时方法）
+        long start = System.nanoTime();
+        for (String sentence : sentences) {
+            Main.fmm(sentence, dict, 7, tokens);
+        }
+        // 结束计时
+        long end = System.nanoTime();
+        System.out.println("Version 5 (Offset-based, Double-Array Trie): Time used: " + (end - start) / 1000000000.0 + "s");
+
+        // 将结果写入文件-用于验证
+        try (BufferedWriter bw = new BufferedWriter(new FileWriter("timetest_v5.txt", false))){
+            for (String sentence : sentences) {
+                Main.fmm(sentence, dict, 7, tokens);
+                for (int i = 0; i < tokens.size(); i++) {
+                    bw.write(sentence, tokens.start(i), tokens.end(i) - tokens.start(i));
+                    bw.write('/');
+                }
+                bw.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
 }
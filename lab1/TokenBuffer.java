@@ -0,0 +1,83 @@
+import java.util.Arrays;
+
+/**
+ * 可复用的分词结果缓冲区
+ * 第i个词为原文的[start(i), end(i))区间，成对存放在一个int数组里，避免为每个词创建String
+ */
+class TokenBuffer {
+    private int[] bounds;
+    private int size;  // 词的个数
+
+    public TokenBuffer() {
+        this(64);
+    }
+
+    public TokenBuffer(int capacity) {
+        bounds = new int[Math.max(2, capacity * 2)];
+    }
+
+    /**
+     * 追加一个词的边界
+     * @param start 起始下标（含）
+     * @param end 结束下标（不含）
+     */
+    public void add(int start, int end) {
+        if (size * 2 + 2 > bounds.length) {
+            bounds = Arrays.copyOf(bounds, bounds.length * 2);
+        }
+        bounds[size * 2] = start;
+        bounds[size * 2 + 1] = end;
+        size++;
+    }
+
+    public int start(int i) {
+        return bounds[i * 2];
+    }
+
+    public int end(int i) {
+        return bounds[i * 2 + 1];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // 逆向匹配是从后往前产出词的，用它把词序翻转回来
+    public void reverse() {
+        for (int i = 0, j = size - 1; i < j; i++, j--) {
+            int s = bounds[i * 2], e = bounds[i * 2 + 1];
+            bounds[i * 2] = bounds[j * 2];
+            bounds[i * 2 + 1] = bounds[j * 2 + 1];
+            bounds[j * 2] = s;
+            bounds[j * 2 + 1] = e;
+        }
+    }
+
+    // 用另一个缓冲区的内容覆盖本缓冲区
+    public void copyFrom(TokenBuffer other) {
+        if (bounds.length < other.size * 2) {
+            bounds = new int[other.bounds.length];
+        }
+        System.arraycopy(other.bounds, 0, bounds, 0, other.size * 2);
+        size = other.size;
+    }
+
+    // 导出为紧凑的边界数组 [start0, end0, start1, end1, ...]
+    public int[] toArray() {
+        return Arrays.copyOf(bounds, size * 2);
+    }
+
+    // 用toArray导出的边界数组覆盖本缓冲区
+    public void copyFrom(int[] packed) {
+        if (bounds.length < packed.length) {
+            bounds = new int[packed.length];
+        }
+        System.arraycopy(packed, 0, bounds, 0, packed.length);
+        size = packed.length / 2;
+    }
+
+    // 清空但保留已分配的数组，供下一句复用
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,11 @@
+/**
+ * 分词结果的消费者，由流水线的工作线程调用，实现需要自己保证线程安全
+ */
+interface TokenSink {
+    /**
+     * 处理一句话的分词结果
+     * @param sentence 原句
+     * @param tokens 该句的词边界，只在本次调用内有效
+     */
+    void accept(String sentence, TokenBuffer tokens);
+}
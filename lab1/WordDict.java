@@ -0,0 +1,25 @@
+/**
+ * 分词词典的公共接口：按下标在原文上做最长前缀匹配，不产生子串
+ */
+interface WordDict {
+    /**
+     * 查找text从from开始、长度不超过maxLen的最长词典词
+     * @param text 待分词的文本
+     * @param from 匹配起点下标
+     * @param maxLen 最大匹配长度
+     * @return 最长匹配词的长度，没有匹配时返回0
+     */
+    int searchLongestPrefix(CharSequence text, int from, int maxLen);
+
+    /**
+     * 判断text的[start, end)区间是否恰好是词典中的一个词，不产生子串
+     * @param text 文本
+     * @param start 起始下标（含）
+     * @param end 结束下标（不含）
+     * @return 是否为词典词
+     */
+    default boolean contains(CharSequence text, int start, int end) {
+        int len = end - start;
+        return len > 0 && searchLongestPrefix(text, start, len) == len;
+    }
+}
@@ -0,0 +1,48 @@
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 并发词频统计
+ * 每个分词线程在自己的TermCounter上计数，互不加锁；统计结束后合并。
+ * 停用词用词典（Trie树）按区间判断，O(词长)且不产生子串。
+ */
+class WordFrequency implements TokenSink {
+    private final WordDict stopwords;
+    private final Queue<TermCounter> counters = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<TermCounter> local = ThreadLocal.withInitial(() -> {
+        TermCounter counter = new TermCounter();
+        counters.add(counter);
+        return counter;
+    });
+
+    /**
+     * @param stopwords 停用词词典，为null时不过滤
+     */
+    public WordFrequency(WordDict stopwords) {
+        this.stopwords = stopwords;
+    }
+
+    @Override
+    public void accept(String sentence, TokenBuffer tokens) {
+        TermCounter counter = local.get();
+        for (int i = 0; i < tokens.size(); i++) {
+            int start = tokens.start(i), end = tokens.end(i);
+            // 过滤停用词，统计词频
+            if (stopwords == null || !stopwords.contains(sentence, start, end)) {
+                counter.add(sentence, start, end);
+            }
+        }
+    }
+
+    /**
+     * 合并所有线程的计数。须在所有分词任务结束后调用
+     * @return 合并后的计数器
+     */
+    public TermCounter merge() {
+        TermCounter res = new TermCounter();
+        for (TermCounter counter : counters) {
+            res.merge(counter);
+        }
+        return res;
+    }
+}
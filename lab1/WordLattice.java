@@ -0,0 +1,103 @@
+import java.util.Arrays;
+
+/**
+ * 词图（DAG）：结点是句子中的位置0..n，每个词典词[start, end)是一条从start到end的边
+ * 边按终点分组存放：以e结尾的边为 [edgeOffset[e - 1], edgeOffset[e])，同组内按词长从长到短。
+ * 可复用，避免每句话重新分配。
+ */
+class WordLattice {
+    private int[] starts = new int[64];
+    private int[] ends = new int[64];
+    private int[] edgeOffset = new int[64];
+    private int edges;
+    private int length;      // 句子长度n
+    private int[] best = new int[64];  // 最短路求解时使用：到每个位置的最少词数
+    private int[] prev = new int[64];  // 最短路求解时使用：到每个位置的最优路径上的上一个位置
+
+    // 清空并设定句子长度
+    void reset(int length) {
+        this.length = length;
+        edges = 0;
+        if (edgeOffset.length < length + 1) {
+            edgeOffset = new int[length + 1];
+            best = new int[length + 1];
+            prev = new int[length + 1];
+        }
+        edgeOffset[0] = 0;
+    }
+
+    // 追加一条边，同一终点的边须连续添加
+    void add(int start, int end) {
+        if (edges == starts.length) {
+            starts = Arrays.copyOf(starts, edges * 2);
+            ends = Arrays.copyOf(ends, edges * 2);
+        }
+        starts[edges] = start;
+        ends[edges] = end;
+        edges++;
+    }
+
+    // 以end结尾的边添加完毕
+    void endPosition(int end) {
+        edgeOffset[end] = edges;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public int edgeCount() {
+        return edges;
+    }
+
+    public int start(int edge) {
+        return starts[edge];
+    }
+
+    public int end(int edge) {
+        return ends[edge];
+    }
+
+    /**
+     * 以end结尾的第一条边的编号，与 lastEdgeEndingAt(end) 一起遍历
+     */
+    public int firstEdgeEndingAt(int end) {
+        return edgeOffset[end - 1];
+    }
+
+    /**
+     * 以end结尾的最后一条边的编号加1
+     */
+    public int lastEdgeEndingAt(int end) {
+        return edgeOffset[end];
+    }
+
+    /**
+     * 最短路分词：在词图上找词数最少的切分，没有词覆盖的位置按单字成词
+     * 词数相同时取最后一个词更长的切分
+     * @param out 分词结果缓冲区，调用时先被清空
+     * @return 分出的词数
+     */
+    public int shortestPath(TokenBuffer out) {
+        best[0] = 0;
+        for (int e = 1; e <= length; e++) {
+            // 单字边总是存在
+            best[e] = best[e - 1] + 1;
+            prev[e] = e - 1;
+            for (int i = firstEdgeEndingAt(e); i < lastEdgeEndingAt(e); i++) {
+                int s = starts[i];
+                if (best[s] + 1 < best[e] || best[s] + 1 == best[e] && s < prev[e]) {
+                    best[e] = best[s] + 1;
+                    prev[e] = s;
+                }
+            }
+        }
+        // 从句尾回溯，得到的是倒序的词
+        out.clear();
+        for (int e = length; e > 0; e = prev[e]) {
+            out.add(prev[e], e);
+        }
+        out.reverse();
+        return out.size();
+    }
+}
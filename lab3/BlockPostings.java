@@ -0,0 +1,264 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 分块压缩的倒排记录表（PForDelta）
+ * 升序编号先求差，每128个差值为一块：块内选一个位宽b，把每个差值的低b位定长打包，
+ * 放不下的少数大差值作为异常，在块尾记录 [块内位置, 1B] [高位, VByte]。
+ * 定长打包的块按long整字解码，没有逐字节判断续位的分支；不足128个的尾块仍用VByte。
+ * 格式：
+ *   [编号数, VByte] [块数, VByte]
+ *   [跳表：每块 [本块最后编号与上一块的差, VByte] [本块字节数, VByte]]
+ *   [整块：[b, 1B] [异常数, 1B] [128个低b位, 2b个long] [异常...]] [尾块：差值, VByte...]
+ * 每块的最后编号写在跳表里，求交集时可以整块跳过而不解码。
+ */
+class BlockPostings {
+    static final int BLOCK = 128;
+    static final int NO_MORE = Integer.MAX_VALUE;
+
+    /**
+     * 编码升序编号
+     * @param ids 升序编号
+     * @param size 编号个数
+     * @return 编码后的字节
+     */
+    static byte[] encode(int[] ids, int size) {
+        int blocks = (size + BLOCK - 1) / BLOCK;
+        ByteArrayOutputStream skipBytes = new ByteArrayOutputStream();
+        ByteArrayOutputStream dataBytes = new ByteArrayOutputStream();
+        DataOutputStream skip = new DataOutputStream(skipBytes);
+        DataOutputStream data = new DataOutputStream(dataBytes);
+        int[] deltas = new int[BLOCK];
+        try {
+            int prevLast = 0;
+            for (int block = 0; block < blocks; block++) {
+                int from = block * BLOCK;
+                int to = Math.min(size, from + BLOCK);
+                int prev = prevLast;
+                for (int i = from; i < to; i++) {
+                    deltas[i - from] = ids[i] - prev;
+                    prev = ids[i];
+                }
+                int before = data.size();
+                if (to - from == BLOCK) {
+                    writeBlock(data, deltas);
+                } else {
+                    for (int i = 0; i < to - from; i++) VByte.write(data, deltas[i]);
+                }
+                VByte.write(skip, ids[to - 1] - prevLast);
+                VByte.write(skip, data.size() - before);
+                prevLast = ids[to - 1];
+            }
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(skipBytes.size() + dataBytes.size() + 10);
+            DataOutputStream out = new DataOutputStream(bytes);
+            VByte.write(out, size);
+            VByte.write(out, blocks);
+            skipBytes.writeTo(out);
+            dataBytes.writeTo(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // 写内存不会失败
+        }
+    }
+
+    // 选出总字节数最小的位宽b，写出一个整块
+    private static void writeBlock(DataOutput out, int[] deltas) throws IOException {
+        int[] bitCount = new int[33];  // bitCount[k]：恰好需要k位的差值个数
+        for (int d : deltas) bitCount[32 - Integer.numberOfLeadingZeros(d)]++;
+        int maxBits = 32;
+        while (maxBits > 0 && bitCount[maxBits] == 0) maxBits--;
+        int bestBits = maxBits;
+        int bestCost = BLOCK / 8 * maxBits;
+        int exceptions = 0;
+        for (int b = maxBits - 1; b >= 0; b--) {
+            exceptions += bitCount[b + 1];
+            // 每个异常1字节位置，高位最多 (maxBits-b) 位，按VByte估算
+            int cost = BLOCK / 8 * b + exceptions * (1 + (maxBits - b + 6) / 7);
+            if (cost < bestCost) {
+                bestCost = cost;
+                bestBits = b;
+            }
+        }
+        int b = bestBits;
+        long mask = (1L << b) - 1;
+        int exceptionCount = 0;
+        for (int d : deltas) {
+            if ((d & 0xFFFFFFFFL) > mask) exceptionCount++;
+        }
+        out.writeByte(b);
+        out.writeByte(exceptionCount);
+        // 低位在前依次填进long，128个b位恰好是2b个long；跨字的值拆成两半
+        long word = 0;
+        int used = 0;
+        for (int d : deltas) {
+            long v = d & mask;
+            word |= v << used;
+            if (used + b >= 64) {
+                out.writeLong(word);
+                word = used + b > 64 ? v >>> (64 - used) : 0;
+                used = used + b - 64;
+            } else {
+                used += b;
+            }
+        }
+        for (int i = 0; i < BLOCK; i++) {
+            if ((deltas[i] & 0xFFFFFFFFL) > mask) {
+                out.writeByte(i);
+                VByte.write(out, deltas[i] >>> b);
+            }
+        }
+    }
+
+    // 解出一个整块的128个差值
+    private static void readBlock(ByteBuffer in, int[] deltas) {
+        int b = in.get() & 0xFF;
+        int exceptionCount = in.get() & 0xFF;
+        long mask = (1L << b) - 1;
+        if (b == 0) {
+            Arrays.fill(deltas, 0);
+        } else {
+            long word = 0;
+            int used = 64;
+            for (int i = 0; i < BLOCK; i++) {
+                if (used == 64) {
+                    word = in.getLong();
+                    used = 0;
+                }
+                long v = word >>> used;
+                if (used + b > 64) {
+                    word = in.getLong();
+                    v |= word << (64 - used);
+                    used = used + b - 64;
+                } else {
+                    used += b;
+                }
+                deltas[i] = (int) (v & mask);
+            }
+        }
+        for (int e = 0; e < exceptionCount; e++) {
+            int i = in.get() & 0xFF;
+            deltas[i] |= VByte.read(in) << b;
+        }
+    }
+
+    /**
+     * 解码全部编号
+     * @param in 从编码起点开始的缓冲区，读完后位置停在编码末尾
+     * @return 升序编号
+     */
+    static int[] decode(ByteBuffer in) {
+        int size = VByte.read(in);
+        int blocks = VByte.read(in);
+        for (int i = 0; i < blocks * 2; i++) VByte.read(in);  // 顺序解码用不到跳表
+        int[] ids = new int[size];
+        int[] deltas = new int[BLOCK];
+        int prev = 0;
+        for (int from = 0; from < size; from += BLOCK) {
+            int n = Math.min(BLOCK, size - from);
+            if (n == BLOCK) {
+                readBlock(in, deltas);
+            } else {
+                for (int i = 0; i < n; i++) deltas[i] = VByte.read(in);
+            }
+            for (int i = 0; i < n; i++) {
+                prev += deltas[i];
+                ids[from + i] = prev;
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 按跳表前进的游标：只解码可能含有目标编号的块
+     */
+    static class Cursor {
+        private final ByteBuffer in;
+        private final int size;
+        private final int[] lastIds;    // 每块的最后编号
+        private final int[] offsets;    // 每块在缓冲区中的起始位置
+        private final int[] ids = new int[BLOCK];
+        private int block = -1;         // 当前已解码的块
+        private int blockSize;
+        private int pos;                // 当前块内的位置
+        private int decodedBlocks;
+
+        /**
+         * @param in 从编码起点开始的缓冲区，游标独占使用
+         */
+        Cursor(ByteBuffer in) {
+            this.in = in;
+            size = VByte.read(in);
+            int blocks = VByte.read(in);
+            lastIds = new int[blocks];
+            offsets = new int[blocks];
+            int last = 0;
+            int length = 0;
+            for (int i = 0; i < blocks; i++) {
+                last += VByte.read(in);
+                lastIds[i] = last;
+                offsets[i] = length;
+                length += VByte.read(in);
+            }
+            int dataStart = in.position();
+            for (int i = 0; i < blocks; i++) offsets[i] += dataStart;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * 前进到第一个不小于target的编号
+         * @return 该编号，没有时返回NO_MORE
+         */
+        public int advance(int target) {
+            int next = Math.max(block, 0);
+            // 跳过最后编号小于target的块，不解码
+            while (next < lastIds.length && lastIds[next] < target) next++;
+            if (next == lastIds.length) return NO_MORE;
+            if (next != block) load(next);
+            while (ids[pos] < target) pos++;  // 块的最后编号不小于target，不会越界
+            return ids[pos];
+        }
+
+        private void load(int b) {
+            block = b;
+            blockSize = Math.min(BLOCK, size - b * BLOCK);
+            in.position(offsets[b]);
+            if (blockSize == BLOCK) {
+                readBlock(in, ids);
+            } else {
+                for (int i = 0; i < blockSize; i++) ids[i] = VByte.read(in);
+            }
+            int prev = b == 0 ? 0 : lastIds[b - 1];
+            for (int i = 0; i < blockSize; i++) {
+                prev += ids[i];
+                ids[i] = prev;
+            }
+            pos = 0;
+            decodedBlocks++;
+        }
+
+        /**
+         * 已解码的块数，用于观察跳表省掉了多少解码
+         */
+        public int decodedBlocks() {
+            return decodedBlocks;
+        }
+
+        /**
+         * 与升序编号求交集：对每个编号前进游标，编号稀疏时绝大多数块不必解码
+         */
+        public PostingList intersect(int[] other, int otherSize) {
+            int[] result = new int[Math.min(size, otherSize)];
+            int n = 0;
+            for (int i = 0; i < otherSize; i++) {
+                int id = advance(other[i]);
+                if (id == NO_MORE) break;
+                if (id == other[i]) result[n++] = id;
+            }
+            return new PostingList(result, n);
+        }
+    }
+}
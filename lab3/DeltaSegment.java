@@ -0,0 +1,123 @@
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * 内存中的增量段：增量更新时新加入或修改过的文档
+ * 文档编号接在已有文档之后，连续且递增；每个词项存文档编号数组和各文档的位置（格式与位置文件相同）。
+ * 建好后不再修改，可被多个查询快照共享。
+ */
+class DeltaSegment {
+    private final int fromDoc;  // 本段文档编号的范围 [fromDoc, toDoc)
+    private final int toDoc;
+    private final Map<String, int[]> ids;
+    private final Map<String, byte[]> positions;
+
+    private DeltaSegment(int fromDoc, int toDoc, Map<String, int[]> ids, Map<String, byte[]> positions) {
+        this.fromDoc = fromDoc;
+        this.toDoc = toDoc;
+        this.ids = ids;
+        this.positions = positions;
+    }
+
+    int fromDoc() {
+        return fromDoc;
+    }
+
+    int toDoc() {
+        return toDoc;
+    }
+
+    Set<String> terms() {
+        return ids.keySet();
+    }
+
+    /**
+     * 词项的文档编号（升序），不存在时返回空数组
+     */
+    int[] ids(String term) {
+        return ids.getOrDefault(term, new int[0]);
+    }
+
+    /**
+     * 词项的位置游标，不存在时返回null
+     */
+    PositionCursor cursor(String term) {
+        int[] list = ids.get(term);
+        return list == null ? null : new PositionCursor(list, ByteBuffer.wrap(positions.get(term)));
+    }
+
+    /**
+     * 所有文档编号加上offset，合并段之后文档重新编号时使用
+     */
+    DeltaSegment shift(int offset) {
+        Map<String, int[]> shifted = new HashMap<>(ids.size() * 2);
+        for (Map.Entry<String, int[]> entry : ids.entrySet()) {
+            int[] list = entry.getValue().clone();
+            for (int i = 0; i < list.length; i++) list[i] += offset;
+            shifted.put(entry.getKey(), list);
+        }
+        return new DeltaSegment(fromDoc + offset, toDoc + offset, shifted, positions);
+    }
+
+    /**
+     * 把编号范围前后相接的若干个增量段合成一个
+     */
+    static DeltaSegment concat(List<DeltaSegment> segments) {
+        Builder builder = new Builder(segments.get(0).fromDoc);
+        for (DeltaSegment segment : segments) {
+            for (Map.Entry<String, int[]> entry : segment.ids.entrySet()) {
+                builder.append(entry.getKey(), entry.getValue(), segment.positions.get(entry.getKey()));
+            }
+            builder.toDoc = segment.toDoc;
+        }
+        return builder.build();
+    }
+
+    /**
+     * 增量段构建器：文档按编号递增的顺序加入
+     */
+    static class Builder {
+        private final int fromDoc;
+        private int toDoc;
+        private final Map<String, PostingList.Builder> builders = new HashMap<>();
+        private final Map<String, ByteArrayOutputStream> positions = new HashMap<>();
+
+        Builder(int fromDoc) {
+            this.fromDoc = fromDoc;
+            this.toDoc = fromDoc;
+        }
+
+        /**
+         * @param termPositions 词项 -> 它在文档中出现的位置（升序）
+         */
+        void add(int docId, Map<String, List<Integer>> termPositions) {
+            for (Map.Entry<String, List<Integer>> entry : termPositions.entrySet()) {
+                builders.computeIfAbsent(entry.getKey(), k -> new PostingList.Builder()).add(docId);
+                SpimiIndexer.writePositions(
+                        positions.computeIfAbsent(entry.getKey(), k -> new ByteArrayOutputStream()), entry.getValue());
+            }
+            toDoc = docId + 1;
+        }
+
+        private void append(String term, int[] ids, byte[] bytes) {
+            PostingList.Builder builder = builders.computeIfAbsent(term, k -> new PostingList.Builder());
+            for (int id : ids) builder.add(id);
+            positions.computeIfAbsent(term, k -> new ByteArrayOutputStream()).write(bytes, 0, bytes.length);
+        }
+
+        boolean isEmpty() {
+            return toDoc == fromDoc;
+        }
+
+        DeltaSegment build() {
+            Map<String, int[]> ids = new HashMap<>(builders.size() * 2);
+            Map<String, byte[]> bytes = new HashMap<>(builders.size() * 2);
+            for (Map.Entry<String, PostingList.Builder> entry : builders.entrySet()) {
+                ids.put(entry.getKey(), entry.getValue().build().toArray());
+                bytes.put(entry.getKey(), positions.get(entry.getKey()).toByteArray());
+            }
+            return new DeltaSegment(fromDoc, toDoc, ids, bytes);
+        }
+    }
+}
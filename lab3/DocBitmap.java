@@ -0,0 +1,139 @@
+import java.util.Arrays;
+
+/**
+ * 位图表示的文档集合，用于高频词和全集
+ * 第docId位为1表示包含该文档；位图之间的AND/OR/NOT都是逐个long字按位运算。
+ * 两个位图的文档总数可以不同（如增量索引中基础段的位图与整个快照的位图），短的一方缺的位按0处理。
+ */
+class DocBitmap extends DocSet {
+    private final long[] words;
+    private final int n;     // 文档总数，即位图的有效位数
+    private final int size;
+
+    private DocBitmap(long[] words, int n) {
+        this.words = words;
+        this.n = n;
+        int count = 0;
+        for (long w : words) count += Long.bitCount(w);
+        this.size = count;
+    }
+
+    /**
+     * 从升序的文档编号建位图
+     */
+    static DocBitmap of(int[] ids, int size, int n) {
+        long[] words = new long[wordCount(n)];
+        for (int i = 0; i < size; i++) {
+            words[ids[i] >>> 6] |= 1L << ids[i];
+        }
+        return new DocBitmap(words, n);
+    }
+
+    /**
+     * 全集 0..n-1
+     */
+    static DocBitmap all(int n) {
+        long[] words = new long[wordCount(n)];
+        Arrays.fill(words, -1L);
+        clearTail(words, n);
+        return new DocBitmap(words, n);
+    }
+
+    private static int wordCount(int n) {
+        return (n + 63) >>> 6;
+    }
+
+    // 最后一个字里超出n的位清零
+    private static void clearTail(long[] words, int n) {
+        if ((n & 63) != 0) words[words.length - 1] &= (1L << n) - 1;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 32 + 8L * words.length;
+    }
+
+    @Override
+    public boolean contains(int docId) {
+        return docId >= 0 && docId < n && (words[docId >>> 6] & (1L << docId)) != 0;
+    }
+
+    @Override
+    public int[] toArray() {
+        int[] res = new int[size];
+        int k = 0;
+        for (int i = 0; i < words.length; i++) {
+            long w = words[i];
+            while (w != 0) {
+                res[k++] = (i << 6) + Long.numberOfTrailingZeros(w);
+                w &= w - 1;
+            }
+        }
+        return res;
+    }
+
+    @Override
+    public DocSet and(DocSet other) {
+        if (other instanceof DocBitmap) {
+            DocBitmap o = (DocBitmap) other;
+            long[] res = new long[wordCount(Math.max(n, o.n))];
+            for (int i = 0; i < Math.min(words.length, o.words.length); i++) res[i] = words[i] & o.words[i];
+            return shrink(res, Math.max(n, o.n));
+        }
+        // 稀疏的一方逐个查位，结果不会比它更大
+        return other.and(this);
+    }
+
+    @Override
+    public DocSet or(DocSet other) {
+        int[] ids = other instanceof DocBitmap ? null : other.toArray();
+        int m = other instanceof DocBitmap ? Math.max(n, ((DocBitmap) other).n)
+                : Math.max(n, ids.length == 0 ? 0 : ids[ids.length - 1] + 1);
+        long[] res = Arrays.copyOf(words, wordCount(m));
+        if (ids == null) {
+            long[] b = ((DocBitmap) other).words;
+            for (int i = 0; i < b.length; i++) res[i] |= b[i];
+        } else {
+            for (int id : ids) res[id >>> 6] |= 1L << id;
+        }
+        return new DocBitmap(res, m);
+    }
+
+    @Override
+    public DocSet andNot(DocSet other) {
+        long[] res = words.clone();
+        if (other instanceof DocBitmap) {
+            long[] b = ((DocBitmap) other).words;
+            for (int i = 0; i < Math.min(res.length, b.length); i++) res[i] &= ~b[i];
+        } else {
+            for (int id : other.toArray()) {
+                if (id >= n) break;  // 升序，之后的都超出本位图
+                res[id >>> 6] &= ~(1L << id);
+            }
+        }
+        return shrink(res, n);
+    }
+
+    @Override
+    public DocSet not(int n) {
+        long[] res = new long[wordCount(n)];
+        for (int i = 0; i < res.length; i++) res[i] = ~(i < words.length ? words[i] : 0L);
+        clearTail(res, n);
+        return new DocBitmap(res, n).shrink();
+    }
+
+    // 运算后变稀疏了就换回数组表示
+    private static DocSet shrink(long[] res, int n) {
+        return new DocBitmap(res, n).shrink();
+    }
+
+    private DocSet shrink() {
+        if (DocSet.isDense(size, n)) return this;
+        return new PostingList(toArray(), size);
+    }
+}
@@ -0,0 +1,46 @@
+/**
+ * 文档编号集合，布尔查询的操作数
+ * 两种表示：稀疏的用升序数组（PostingList），稠密的用位图（DocBitmap）。
+ * 按密度选择表示：数组每个编号4字节，位图每个文档1位，编号个数超过文档总数的1/32时位图更省。
+ * 所有操作都返回新集合，不修改操作数。
+ */
+abstract class DocSet {
+    /**
+     * 集合中的文档数
+     */
+    public abstract int size();
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public abstract boolean contains(int docId);
+
+    /**
+     * 升序的文档编号数组
+     */
+    public abstract int[] toArray();
+
+    public abstract DocSet and(DocSet other);
+
+    public abstract DocSet or(DocSet other);
+
+    public abstract DocSet andNot(DocSet other);
+
+    /**
+     * 补集：全集 0..n-1 减去本集合
+     */
+    public abstract DocSet not(int n);
+
+    /**
+     * 估计占用的堆内存字节数，用于按大小限制缓存
+     */
+    public abstract long memoryBytes();
+
+    /**
+     * 编号个数为size、文档总数为n时，是否应该用位图表示
+     */
+    static boolean isDense(int size, int n) {
+        return n > 0 && (long) size * 32 >= n;
+    }
+}
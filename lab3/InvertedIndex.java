@@ -0,0 +1,48 @@
+/**
+ * 倒排索引的只读视图：文档用 0..docCount()-1 的整数编号
+ * 倒排记录表按词项的密度用升序数组或位图表示
+ */
+interface InvertedIndex {
+    /**
+     * 文档总数，文档编号的范围为 0..docCount()-1
+     */
+    int docCount();
+
+    /**
+     * 索引的版本号，内容改变（重建、更新）后变化，缓存据此判断是否失效
+     */
+    default long version() {
+        return 0;
+    }
+
+    /**
+     * 全部（未删除的）文档，NOT求补集时的全集
+     */
+    default DocSet allDocs() {
+        return DocBitmap.all(docCount());
+    }
+
+    /**
+     * 文档编号对应的文件名
+     */
+    String docName(int docId);
+
+    /**
+     * 词项的倒排记录表，词项不存在时返回空表
+     */
+    DocSet postings(String term);
+
+    /**
+     * 词项的文档频率（倒排记录表长度），查询计划用它估计代价
+     */
+    default int docFreq(String term) {
+        return postings(term).size();
+    }
+
+    /**
+     * 词项的倒排记录表与filter的交集。磁盘上分块压缩的索引可以借助跳表只解码用得到的块
+     */
+    default DocSet postingsAnd(String term, DocSet filter) {
+        return postings(term).and(filter);
+    }
+}
@@ -0,0 +1,72 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 延迟直方图，线程安全，用于统计p50/p99
+ * 以微秒计：小于64的值每个一格；更大的值按2的幂分段，每段再均分32格，相对误差不超过1/32。
+ * 记录只是一次原子加，不保存原始样本，内存固定。
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKETS = 32;
+    private static final int LINEAR = 64;
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (64 - 6) * SUB_BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sumMicros = new LongAdder();
+
+    /**
+     * 记录一次耗时
+     * @param nanos 纳秒
+     */
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        counts.incrementAndGet(bucket(micros));
+        total.increment();
+        sumMicros.add(micros);
+    }
+
+    private static int bucket(long micros) {
+        if (micros < LINEAR) return (int) micros;
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);  // >= 6
+        int sub = (int) (micros >>> (exponent - 5)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - 6) * SUB_BUCKETS + sub;
+    }
+
+    // 格的上界（微秒）
+    private static long upperBound(int bucket) {
+        if (bucket < LINEAR) return bucket;
+        int exponent = (bucket - LINEAR) / SUB_BUCKETS + 6;
+        int sub = (bucket - LINEAR) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - 5)) - 1;
+    }
+
+    public long count() {
+        return total.sum();
+    }
+
+    /**
+     * @param p 百分位，0到100之间
+     * @return 对应的延迟（微秒），没有样本时返回0
+     */
+    public long percentile(double p) {
+        long n = count();
+        if (n == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(n * p / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank) return upperBound(i);
+        }
+        return upperBound(counts.length() - 1);
+    }
+
+    public double meanMicros() {
+        long n = count();
+        return n == 0 ? 0 : (double) sumMicros.sum() / n;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count=%d mean=%.0fus p50=%dus p90=%dus p99=%dus max<=%dus",
+                count(), meanMicros(), percentile(50), percentile(90), percentile(99), percentile(100));
+    }
+}
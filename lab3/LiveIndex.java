@@ -0,0 +1,376 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 支持增量更新的索引
+ * 由一个磁盘上的基础段、若干个内存中的增量段和一个已删除文档的列表组成：
+ * 新文件和修改过的文件分词后放进新的增量段，编号接在已有文档之后；修改和删除的文件把旧编号记为已删除。
+ * 每次更新生成一个新的只读快照（Snapshot）并原子地替换，查询拿到快照后不受之后的更新影响，读不加锁。
+ * 合并策略：增量段超过MAX_DELTAS个时在内存中合成一个；增量文档和已删除文档合计超过基础段的1/10时，
+ * 在后台线程把基础段和增量段合并成新的段文件（丢掉已删除的文档，重新编号），完成后再替换快照。
+ * 合并期间的更新照常进行，替换时把这期间新增的增量段和删除重新编号后带到新快照里。
+ * 新段文件在全部写完后才替换旧的，合并中途失败时段文件和快照都不变。
+ */
+class LiveIndex implements Closeable {
+    static final int MAX_DELTAS = 8;
+    static final int MIN_MERGE_DOCS = 64;
+
+    private final Path segmentPath;
+    private final String directoryPath;
+    private volatile Snapshot current;
+    private final Map<String, Integer> nameToId = new HashMap<>();  // 文件名 -> 当前有效的文档编号
+    private final List<SegmentIndex> retired = new ArrayList<>();   // 合并后换下的段，仍可能被旧快照读取，关闭时统一释放
+    private final ExecutorService merger = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "index-merger");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private Future<?> merging;
+    private long nextVersion = 1;
+
+    private LiveIndex(Path segmentPath, String directoryPath, SegmentIndex base) {
+        this.segmentPath = segmentPath;
+        this.directoryPath = directoryPath;
+        String[] names = new String[base.docCount()];
+        long[] times = new long[base.docCount()];
+        for (int docId = 0; docId < names.length; docId++) {
+            names[docId] = base.docName(docId);
+            times[docId] = base.docTime(docId);
+            nameToId.put(names[docId], docId);
+        }
+        current = new Snapshot(base, Collections.emptyList(), names, times, PostingList.EMPTY, 0);
+    }
+
+    /**
+     * 打开目录的索引：段文件不存在或损坏时用SPIMI重新构建，然后把目录中的变化增量地加进来
+     * @param segmentPath 段文件路径
+     * @param directoryPath 文档目录
+     * @param memoryBudget 构建时倒排记录表的内存预算（字节）
+     */
+    static LiveIndex open(Path segmentPath, String directoryPath, long memoryBudget) throws IOException {
+        SegmentIndex base = null;
+        if (Files.exists(segmentPath)) {
+            try {
+                base = SegmentIndex.open(segmentPath);
+            } catch (IOException e) {
+                System.out.println("索引段无法打开，重新构建：" + e.getMessage());
+            }
+        }
+        if (base == null) {
+            long buildStart = System.nanoTime();
+            new InvertedIndexBuilder().buildSegment(directoryPath, segmentPath, memoryBudget,
+                    Runtime.getRuntime().availableProcessors());
+            System.out.println("索引构建用时：" + (System.nanoTime() - buildStart) / 1_000_000 + " ms");
+            base = SegmentIndex.open(segmentPath);
+        }
+        LiveIndex index = new LiveIndex(segmentPath, directoryPath, base);
+        index.sync();
+        return index;
+    }
+
+    /**
+     * 当前的只读快照，一次查询应只用同一个快照
+     */
+    public Snapshot snapshot() {
+        return current;
+    }
+
+    /**
+     * 扫描文档目录，把新增、修改、删除的文件增量地反映到索引中
+     * @return 变化的文件数
+     */
+    public synchronized int sync() throws IOException {
+        Snapshot s = current;
+        List<String> names = new ArrayList<>(Arrays.asList(s.docNames));
+        List<Long> times = new ArrayList<>();
+        for (long t : s.docTimes) times.add(t);
+        TreeSet<Integer> deleted = new TreeSet<>();
+        for (int docId : s.deleted.toArray()) deleted.add(docId);
+        DeltaSegment.Builder delta = new DeltaSegment.Builder(names.size());
+
+        // 文件名到编号的变化先记在本地，与新快照一起生效；中途出错时nameToId仍与当前快照一致
+        Map<String, Integer> added = new HashMap<>();
+        List<String> removed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int changes = 0;
+        for (Path path : InvertedIndexBuilder.listFiles(directoryPath)) {
+            String name = path.getFileName().toString();
+            long time = Files.getLastModifiedTime(path).toMillis();
+            seen.add(name);
+            Integer docId = nameToId.get(name);
+            if (docId != null && s.docTimes[docId] == time) continue;
+            if (docId != null) deleted.add(docId);  // 修改：旧版本作废，新版本作为新文档加入
+            int newId = names.size();
+            names.add(name);
+            times.add(time);
+            added.put(name, newId);
+            delta.add(newId, InvertedIndexBuilder.documentPositions(path));
+            changes++;
+        }
+        for (Map.Entry<String, Integer> entry : nameToId.entrySet()) {
+            if (!seen.contains(entry.getKey())) {
+                deleted.add(entry.getValue());
+                removed.add(entry.getKey());
+                changes++;
+            }
+        }
+        if (changes == 0) return 0;
+
+        int[] deletedIds = deleted.stream().mapToInt(Integer::intValue).toArray();
+        List<DeltaSegment> deltas = new ArrayList<>(s.deltas);
+        if (!delta.isEmpty()) deltas.add(delta.build());
+        publish(new Snapshot(s.base, deltas, names.toArray(new String[0]),
+                times.stream().mapToLong(Long::longValue).toArray(),
+                new PostingList(deletedIds, deletedIds.length), nextVersion++));
+        nameToId.keySet().removeAll(removed);
+        nameToId.putAll(added);
+        maybeMerge();
+        return changes;
+    }
+
+    private void publish(Snapshot snapshot) {
+        current = snapshot;
+    }
+
+    // 合并策略，在持有锁时调用
+    private void maybeMerge() {
+        if (merging != null && !merging.isDone()) return;  // 后台合并进行中，增量段保持原样
+        Snapshot s = current;
+        if (s.deltas.size() > MAX_DELTAS) {
+            List<DeltaSegment> deltas = Collections.singletonList(DeltaSegment.concat(s.deltas));
+            publish(new Snapshot(s.base, deltas, s.docNames, s.docTimes, s.deleted, nextVersion++));
+        }
+        int pending = s.docCount() - s.base.docCount() + s.deleted.size();
+        if (pending >= Math.max(MIN_MERGE_DOCS, s.base.docCount() / 10)) {
+            merging = merger.submit(() -> {
+                try {
+                    mergeSegments();
+                } catch (IOException | RuntimeException e) {
+                    // 段文件和当前快照都保持原样，下次达到合并条件时再试
+                    System.err.println("后台合并失败，继续使用原有的段：" + e);
+                    throw e;
+                }
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 立即把所有增量段和删除合并进段文件，等待完成
+     */
+    public void merge() throws IOException {
+        Future<?> task;
+        synchronized (this) {
+            // 与后台合并用同一个线程，排在它后面，不会同时写段文件
+            task = merging = merger.submit(() -> {
+                mergeSegments();
+                return null;
+            });
+        }
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    // 把快照s0的基础段和增量段合并成新的段文件，再替换当前快照；不持有锁，读者和更新都不受影响
+    private void mergeSegments() throws IOException {
+        Snapshot s0 = current;
+        if (s0.deltas.isEmpty() && s0.deleted.isEmpty()) return;
+        int n = s0.docCount();
+        int[] remap = new int[n];  // 旧编号 -> 新编号，已删除的为-1
+        List<String> names = new ArrayList<>();
+        List<Long> times = new ArrayList<>();
+        for (int docId = 0; docId < n; docId++) {
+            if (s0.deleted.contains(docId)) {
+                remap[docId] = -1;
+            } else {
+                remap[docId] = names.size();
+                names.add(s0.docNames[docId]);
+                times.add(s0.docTimes[docId]);
+            }
+        }
+        int merged = names.size();
+
+        // 各段的词项合起来按升序写出；位置按文档原样复制，不重新编码
+        TreeSet<String> terms = new TreeSet<>(Arrays.asList(s0.base.terms()));
+        for (DeltaSegment delta : s0.deltas) terms.addAll(delta.terms());
+        try (SegmentIndex.Writer writer = new SegmentIndex.Writer(segmentPath, names.toArray(new String[0]),
+                times.stream().mapToLong(Long::longValue).toArray())) {
+            for (String term : terms) {
+                PostingList.Builder ids = new PostingList.Builder();
+                ByteArrayOutputStream positions = new ByteArrayOutputStream();
+                copy(s0.base.cursor(term), remap, ids, positions);
+                for (DeltaSegment delta : s0.deltas) copy(delta.cursor(term), remap, ids, positions);
+                PostingList list = ids.build();
+                if (!list.isEmpty()) writer.add(term, list, positions.toByteArray());
+            }
+            writer.commit();
+        }
+        SegmentIndex base = SegmentIndex.open(segmentPath);
+
+        synchronized (this) {
+            Snapshot s1 = current;
+            // 合并期间新增的文档编号整体前移，期间删除的文档按新编号记录
+            int shift = merged - n;
+            List<DeltaSegment> deltas = new ArrayList<>();
+            for (DeltaSegment delta : s1.deltas.subList(s0.deltas.size(), s1.deltas.size())) {
+                deltas.add(delta.shift(shift));
+            }
+            for (int docId = n; docId < s1.docCount(); docId++) {
+                names.add(s1.docNames[docId]);
+                times.add(s1.docTimes[docId]);
+            }
+            PostingList.Builder deleted = new PostingList.Builder();
+            for (int docId : s1.deleted.toArray()) {
+                if (docId >= n) deleted.add(docId + shift);
+                else if (remap[docId] >= 0) deleted.add(remap[docId]);
+            }
+            for (Map.Entry<String, Integer> entry : nameToId.entrySet()) {
+                int docId = entry.getValue();
+                entry.setValue(docId >= n ? docId + shift : remap[docId]);
+            }
+            retired.add(s1.base);
+            publish(new Snapshot(base, deltas, names.toArray(new String[0]),
+                    times.stream().mapToLong(Long::longValue).toArray(), deleted.build(), nextVersion++));
+        }
+    }
+
+    // 把一个段中某词项未删除的文档按新编号追加
+    private static void copy(PositionCursor cursor, int[] remap, PostingList.Builder ids,
+                             ByteArrayOutputStream positions) {
+        if (cursor == null) return;
+        for (int docId = cursor.docId(); docId != BlockPostings.NO_MORE; docId = cursor.docId()) {
+            if (remap[docId] >= 0) {
+                ids.add(remap[docId]);
+                cursor.copyTo(positions);
+            } else {
+                cursor.skip();
+            }
+        }
+    }
+
+    // 先等排队和进行中的合并结束（它还在读当前的段，完成时还会打开新段），再关闭各段；等待时不能持有锁，合并结束前要拿锁替换快照
+    @Override
+    public void close() throws IOException {
+        merger.shutdown();
+        try {
+            merger.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+        synchronized (this) {
+            current.base.close();
+            for (SegmentIndex segment : retired) segment.close();
+        }
+    }
+
+    /**
+     * 索引在某一时刻的只读视图：基础段 + 增量段 - 已删除的文档
+     * 文档编号在各段之间连续：基础段为 0..base.docCount()-1，增量段依次接在后面。
+     */
+    static class Snapshot implements PositionalIndex {
+        final SegmentIndex base;
+        final List<DeltaSegment> deltas;
+        final String[] docNames;
+        final long[] docTimes;
+        final PostingList deleted;
+        private final long version;
+        private final DocSet live;
+
+        Snapshot(SegmentIndex base, List<DeltaSegment> deltas, String[] docNames, long[] docTimes,
+                 PostingList deleted, long version) {
+            this.base = base;
+            this.deltas = deltas;
+            this.docNames = docNames;
+            this.docTimes = docTimes;
+            this.deleted = deleted;
+            this.version = version;
+            this.live = DocBitmap.all(docNames.length).andNot(deleted);
+        }
+
+        @Override
+        public int docCount() {
+            return docNames.length;
+        }
+
+        @Override
+        public String docName(int docId) {
+            return docNames[docId];
+        }
+
+        @Override
+        public long version() {
+            return version;
+        }
+
+        @Override
+        public DocSet allDocs() {
+            return live;
+        }
+
+        @Override
+        public int docFreq(String term) {
+            int df = base.docFreq(term);
+            for (DeltaSegment delta : deltas) df += delta.ids(term).length;
+            return df;
+        }
+
+        @Override
+        public DocSet postings(String term) {
+            if (deltas.isEmpty() && deleted.isEmpty()) return base.postings(term);
+            // 各段的编号范围前后相接，直接拼接即为升序
+            int[] ids = base.ids(term);
+            for (DeltaSegment delta : deltas) {
+                int[] more = delta.ids(term);
+                if (more.length == 0) continue;
+                int[] joined = Arrays.copyOf(ids, ids.length + more.length);
+                System.arraycopy(more, 0, joined, ids.length, more.length);
+                ids = joined;
+            }
+            DocSet result = DocSet.isDense(ids.length, docNames.length)
+                    ? DocBitmap.of(ids, ids.length, docNames.length) : new PostingList(ids, ids.length);
+            return deleted.isEmpty() ? result : result.andNot(deleted);
+        }
+
+        @Override
+        public DocSet postingsAnd(String term, DocSet filter) {
+            // filter来自本快照，只含未删除的文档；基础段部分仍可用跳表
+            DocSet result = base.postingsAnd(term, filter);
+            for (DeltaSegment delta : deltas) {
+                int[] ids = delta.ids(term);
+                if (ids.length > 0) result = result.or(new PostingList(ids, ids.length).and(filter));
+            }
+            return result;
+        }
+
+        @Override
+        public Positions positions(String term) {
+            List<PositionCursor> cursors = new ArrayList<>();
+            List<Integer> ends = new ArrayList<>();  // 各游标负责的编号上界（不含）
+            cursors.add(base.cursor(term));
+            ends.add(base.docCount());
+            for (DeltaSegment delta : deltas) {
+                cursors.add(delta.cursor(term));
+                ends.add(delta.toDoc());
+            }
+            return new Positions() {
+                private int segment;
+
+                @Override
+                public int[] get(int docId) {
+                    while (docId >= ends.get(segment)) segment++;
+                    PositionCursor cursor = cursors.get(segment);
+                    return cursor == null ? null : cursor.get(docId);
+                }
+            };
+        }
+    }
+}
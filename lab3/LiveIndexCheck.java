@@ -0,0 +1,113 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 增量索引的回归检查
+ * 在临时目录中用dataset/article的文章建基础段，然后分几轮新增（拼接已有文章）、修改、删除文件，
+ * 每轮sync后把LiveIndex快照上的查询结果与对同一目录从头构建的索引比较，最后再比较合并后和重新打开后的结果。
+ * 新增的文档数超过基础段的位图长度（跨过64位字的边界），专门覆盖基础段与快照位图长度不同的情况。
+ * 不一致时打印两边的结果并以非0状态退出。
+ * 用法：java LiveIndexCheck [轮数]
+ */
+public class LiveIndexCheck {
+    private static final String[] QUERIES = {
+            "中方 AND 合作", "中方 AND NOT 合作", "经济 OR 能源", "NOT 中国", "(经济 OR 能源) AND NOT 美国",
+            "发展 AND 文化 AND 中国", "发展 AND (美国 OR 日本) AND NOT 台湾", "美国 AND 中国 AND 合作",
+            "\"中国外交部\" AND 记者", "外交部 NEAR/2 发言人", "NOT (中国 OR 美国)",
+    };
+
+    public static void main(String[] args) throws IOException {
+        int rounds = args.length >= 1 ? Integer.parseInt(args[0]) : 6;
+        List<Path> articles = InvertedIndexBuilder.listFiles("dataset/article");
+        Path work = Files.createTempDirectory("live-index-check");
+        Path dir = Files.createDirectory(work.resolve("article"));
+        for (Path article : articles) Files.copy(article, dir.resolve(article.getFileName()));
+
+        Random random = new Random(7);
+        int failures = 0;
+        try (LiveIndex live = LiveIndex.open(work.resolve("index.seg"), dir.toString(), 64L << 20)) {
+            failures += check("初始", live, dir, work);
+
+            // 一次新增50篇，超过基础段的位图长度
+            for (int i = 0; i < 50; i++) addArticle(dir, articles, random, "added_" + i + ".txt");
+            live.sync();
+            failures += check("新增50篇", live, dir, work);
+
+            for (int round = 0; round < rounds; round++) {
+                List<Path> files = InvertedIndexBuilder.listFiles(dir.toString());
+                for (int k = 0; k < 6; k++) {
+                    Path file = files.get(random.nextInt(files.size()));
+                    if (!Files.exists(file)) continue;
+                    switch (random.nextInt(3)) {
+                        case 0:
+                            Files.delete(file);
+                            break;
+                        case 1:
+                            Files.write(file, concat(articles, random));
+                            // 保证修改时间与建索引时记下的不同
+                            file.toFile().setLastModified(System.currentTimeMillis() + 1000L * (round + 1) + k);
+                            break;
+                        default:
+                            addArticle(dir, articles, random, "round" + round + "_" + k + ".txt");
+                    }
+                }
+                live.sync();
+                failures += check("第" + (round + 1) + "轮", live, dir, work);
+            }
+
+            live.merge();
+            failures += check("合并后", live, dir, work);
+        }
+        try (LiveIndex reopened = LiveIndex.open(work.resolve("index.seg"), dir.toString(), 64L << 20)) {
+            failures += check("重新打开", reopened, dir, work);
+        }
+        System.out.println(failures == 0 ? "全部一致" : failures + " 处不一致");
+        if (failures > 0) System.exit(1);
+    }
+
+    // 由两篇随机文章拼成一篇新文章
+    private static void addArticle(Path dir, List<Path> articles, Random random, String name) throws IOException {
+        Files.write(dir.resolve(name), concat(articles, random));
+    }
+
+    private static byte[] concat(List<Path> articles, Random random) throws IOException {
+        String a = new String(Files.readAllBytes(articles.get(random.nextInt(articles.size()))), StandardCharsets.UTF_8);
+        String b = new String(Files.readAllBytes(articles.get(random.nextInt(articles.size()))), StandardCharsets.UTF_8);
+        return (a + "\n" + b).getBytes(StandardCharsets.UTF_8);
+    }
+
+    // 比较快照与从头构建的索引上每个查询的结果（按文件名比较），返回不一致的查询数
+    private static int check(String label, LiveIndex live, Path dir, Path work) throws IOException {
+        Path freshSegment = work.resolve("fresh.seg");
+        new InvertedIndexBuilder().buildSegment(dir.toString(), freshSegment, 64L << 20, 1);
+        int failures = 0;
+        LiveIndex.Snapshot snapshot = live.snapshot();
+        try (SegmentIndex fresh = SegmentIndex.open(freshSegment)) {
+            for (String query : QUERIES) {
+                Set<String> expected = names(query, fresh);
+                Set<String> actual = names(query, snapshot);
+                if (!expected.equals(actual)) {
+                    failures++;
+                    System.out.println("  [不一致] " + query + "\n    增量：" + actual + "\n    重建：" + expected);
+                }
+            }
+        }
+        System.out.printf("%s：文档 %d 篇（基础段 %d，增量段 %d 个，已删除 %d），%s%n", label, snapshot.docCount(),
+                snapshot.base.docCount(), snapshot.deltas.size(), snapshot.deleted.size(),
+                failures == 0 ? "一致" : failures + " 个查询不一致");
+        return failures;
+    }
+
+    private static Set<String> names(String query, InvertedIndex index) {
+        Set<String> names = new TreeSet<>();
+        try {
+            DocSet result = QueryPlanner.plan(InfixToPostfixConverter.toPostfix(query), index).execute(index);
+            for (int docId : result.toArray()) names.add(index.docName(docId));
+        } catch (RuntimeException e) {
+            names.add("异常：" + e);
+        }
+        return names;
+    }
+}
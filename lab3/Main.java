@@ -2,56 +2,182 @@ import com.huaban.analysis.jieba.JiebaSegmenter;
 import java.io.IOException;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Stream;
 
 /**
  * 倒排索引构建类
+ * 文件按文件名排序后依次编号为0..n-1，再按编号切成连续的若干片，多线程并行处理：
+ * 每个线程用自己的分词器、建自己的局部索引，最后按分片顺序合并。
+ * 分片的编号区间递增，按顺序追加即可保证合并后的倒排记录表有序，结果与单线程构建完全相同。
  */
 class InvertedIndexBuilder {
-    private final JiebaSegmenter segmenter = new JiebaSegmenter();
-    private final Set<String> allFiles = new HashSet<>(); // 存储所有文件名字
+    // 分词器不共享，每个线程一个
+    private static final ThreadLocal<JiebaSegmenter> segmenters = ThreadLocal.withInitial(JiebaSegmenter::new);
 
-    // 构建倒排索引，用HashMap存储，文件名集合也用HashSet存储
-    public Map<String, Set<String>> buildIndex(String directoryPath) {
-        Map<String, Set<String>> invertedIndex = new HashMap<>();
-        // 遍历目录，处理每个文件
+    public MemoryIndex buildIndex(String directoryPath) {
+        return buildIndex(directoryPath, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * 构建倒排索引
+     * @param directoryPath 文档目录
+     * @param threads 线程数
+     * @return 内存中的倒排索引
+     */
+    public MemoryIndex buildIndex(String directoryPath, int threads) {
+        List<Path> files = listFiles(directoryPath);
+        String[] docNames = new String[files.size()];
+        for (int docId = 0; docId < files.size(); docId++) {
+            docNames[docId] = files.get(docId).getFileName().toString(); // 仅获取文件名
+        }
+
+        // 分片数取线程数的若干倍，文档长短不一时各线程的负载更均衡
+        int shards = Math.max(1, Math.min(files.size(), threads * 4));
+        List<Map<String, PostingList.Builder>> partials = new ArrayList<>();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Map<String, PostingList.Builder>>> futures = new ArrayList<>();
+            for (int shard = 0; shard < shards; shard++) {
+                int from = (int) ((long) files.size() * shard / shards);
+                int to = (int) ((long) files.size() * (shard + 1) / shards);
+                futures.add(pool.submit(() -> processShard(files, from, to)));
+            }
+            for (Future<Map<String, PostingList.Builder>> future : futures) {
+                partials.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        // 合并：按分片顺序把局部记录表追加到一起
+        Map<String, PostingList.Builder> builders = new HashMap<>();
+        for (Map<String, PostingList.Builder> partial : partials) {
+            for (Map.Entry<String, PostingList.Builder> entry : partial.entrySet()) {
+                PostingList.Builder builder = builders.putIfAbsent(entry.getKey(), entry.getValue());
+                if (builder != null) builder.addAll(entry.getValue());
+            }
+        }
+
+        // 每个词项按密度选择升序数组或位图
+        Map<String, DocSet> postings = new HashMap<>(builders.size() * 2);
+        for (Map.Entry<String, PostingList.Builder> entry : builders.entrySet()) {
+            postings.put(entry.getKey(), entry.getValue().build(docNames.length));
+        }
+        return new MemoryIndex(docNames, postings);
+    }
+
+    /**
+     * 用SPIMI构建磁盘上的索引段：多线程分词，按编号顺序交给SpimiIndexer，内存占用受预算限制
+     * @param directoryPath 文档目录
+     * @param segment 段文件路径
+     * @param memoryBudget 倒排记录表的内存预算（字节）
+     * @param threads 分词线程数
+     */
+    public void buildSegment(String directoryPath, Path segment, long memoryBudget, int threads) throws IOException {
+        List<Path> files = listFiles(directoryPath);
+        String[] docNames = new String[files.size()];
+        long[] docTimes = new long[files.size()];
+        for (int docId = 0; docId < files.size(); docId++) {
+            docNames[docId] = files.get(docId).getFileName().toString();
+            docTimes[docId] = Files.getLastModifiedTime(files.get(docId)).toMillis();
+        }
+        Path workDir = segment.resolveSibling(segment.getFileName() + ".runs");
+        SpimiIndexer indexer = new SpimiIndexer(workDir, memoryBudget);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // 最多threads*2篇文档同时在分词，已分好的按编号顺序交给索引器
+            int window = threads * 2;
+            Deque<Future<Map<String, List<Integer>>>> inFlight = new ArrayDeque<>();
+            int next = 0;
+            for (int docId = 0; docId < files.size(); docId++) {
+                while (next < files.size() && inFlight.size() < window) {
+                    Path path = files.get(next++);
+                    inFlight.add(pool.submit(() -> documentPositions(path)));
+                }
+                indexer.addDocument(docId, inFlight.poll().get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        indexer.finish(docNames, docTimes, segment);
+        Files.deleteIfExists(workDir);
+    }
+
+    // 遍历目录，收集所有文件并按文件名排序，排序后的下标即文档编号
+    static List<Path> listFiles(String directoryPath) {
+        List<Path> files = new ArrayList<>();
         try (Stream<Path> paths = Files.walk(Paths.get(directoryPath))) {
-            paths.filter(Files::isRegularFile)
-                    .forEach(path -> processFile(path, invertedIndex));
+            paths.filter(Files::isRegularFile).forEach(files::add);
         } catch (IOException e) {
             e.printStackTrace();
         }
-        return invertedIndex;
+        files.sort(Comparator.comparing(path -> path.getFileName().toString()));
+        return files;
     }
 
-    // 处理单个文件，把关键词及其所在文件名记录到倒排索引中
-    private void processFile(Path path, Map<String, Set<String>> invertedIndex) {
-        try {
-            String fileName = path.getFileName().toString(); // 仅获取文件名
-            allFiles.add(fileName); // 记录所有文件名
+    // 处理编号在[from, to)之间的文件，返回这一片的局部索引
+    private Map<String, PostingList.Builder> processShard(List<Path> files, int from, int to) {
+        Map<String, PostingList.Builder> builders = new HashMap<>();
+        for (int docId = from; docId < to; docId++) {
+            processFile(files.get(docId), docId, builders);
+        }
+        return builders;
+    }
 
+    // 处理单个文件，把关键词及其所在文档编号记录到倒排索引中；文档按编号递增的顺序处理，记录表自然有序
+    private void processFile(Path path, int docId, Map<String, PostingList.Builder> builders) {
+        for (String word : documentPositions(path).keySet()) {
+            // 记录关键词及其所在文档编号
+            builders.computeIfAbsent(word, k -> new PostingList.Builder()).add(docId);
+        }
+    }
+
+    // 对单个文件分词，返回其中的有效词及各自出现的位置
+    static Map<String, List<Integer>> documentPositions(Path path) {
+        Map<String, List<Integer>> terms = new LinkedHashMap<>();
+        try {
             String content = new String(Files.readAllBytes(path));
-            List<String> words = segmenter.sentenceProcess(content);
-            for (String word : words) {
+            List<String> words = analyze(content);
+            for (int position = 0; position < words.size(); position++) {
+                String word = words.get(position);
                 // 过滤无效词
                 if (isValidWord(word)) {
-                    // 记录关键词及其所在文件名
-                    invertedIndex.computeIfAbsent(word, k -> new HashSet<>()).add(fileName);
+                    terms.computeIfAbsent(word, k -> new ArrayList<>()).add(position);
                 }
             }
         } catch (IOException e) {
             e.printStackTrace();
         }
+        return terms;
     }
 
-    // 过滤无效词
-    private boolean isValidWord(String word) {
-        return word.trim().length() > 1 && !word.matches("[\\d\\p{Punct}\\s]+"); // 过滤单字、标点、数字、空白字符
+    /**
+     * 分词并去掉空白，下标即词的位置；建索引和解析短语查询用同一种切分
+     * @param text 文本
+     * @return 非空白的词
+     */
+    static List<String> analyze(String text) {
+        List<String> words = new ArrayList<>();
+        for (String word : segmenters.get().sentenceProcess(text)) {
+            if (!word.trim().isEmpty()) words.add(word);
+        }
+        return words;
     }
 
-    // 获得所有文件名，用于后续取差集
-    public Set<String> getAllFileNames() {
-        return allFiles;
+    // 过滤无效词
+    static boolean isValidWord(String word) {
+        return word.trim().length() > 1 && !word.matches("[\\d\\p{Punct}\\s]+"); // 过滤单字、标点、数字、空白字符
     }
 }
 
@@ -71,21 +197,46 @@ class InfixToPostfixConverter {
      * 运行时机:在JVM加载类时执行，比任何构造函数或实例代码先执行
      */
     static {
-        PRECEDENCE.put("NOT", 3);  // NOT 最高优先级
-        PRECEDENCE.put("AND", 2);  // AND 次高优先级
+        PRECEDENCE.put("NEAR", 4); // NEAR/n 邻近查询，只连接词项或短语，优先级最高
+        PRECEDENCE.put("NOT", 3);  // NOT 次高优先级
+        PRECEDENCE.put("AND", 2);
         PRECEDENCE.put("OR", 1);   // OR 最低优先级
     }
 
+    /**
+     * 运算符在PRECEDENCE中的名字，NEAR/n 统一为 NEAR；不是运算符时返回null
+     */
+    static String operator(String token) {
+        String upper = token.toUpperCase();
+        if (upper.matches("NEAR/\\d+")) return "NEAR";
+        return PRECEDENCE.containsKey(upper) && !upper.equals("NEAR") ? upper : null;
+    }
+
     /**
      * 将中缀表达式字符串转换为列表，便于后续处理
+     * 双引号括起的短语作为一个整体（保留引号），其中的空格和括号不切分
      * @param query 中缀表达式字符串
      * @return 中缀表达式字符串的列表
      */
     public static List<String> tokenize(String query) {
         List<String> tokens = new ArrayList<>();
         StringBuilder currentToken = new StringBuilder();
+        boolean quoted = false;
         for (char ch : query.toCharArray()) {
-            if (Character.isWhitespace(ch)) {
+            if (ch == '"') {
+                currentToken.append(ch);
+                if (quoted) {  // 短语结束
+                    tokens.add(currentToken.toString());
+                    currentToken.setLength(0);
+                } else if (currentToken.length() > 1) {  // 引号紧跟在词后面，先切开
+                    tokens.add(currentToken.substring(0, currentToken.length() - 1));
+                    currentToken.setLength(0);
+                    currentToken.append(ch);
+                }
+                quoted = !quoted;
+            } else if (quoted) {
+                currentToken.append(ch);
+            } else if (Character.isWhitespace(ch)) {
                 if (currentToken.length() > 0) {
                     tokens.add(currentToken.toString());
                     currentToken.setLength(0);
@@ -127,9 +278,10 @@ class InfixToPostfixConverter {
                     output.add(stack.pop());
                 }
                 stack.pop();  // 弹出左括号 '(' 左括号不加入输出列表
-            } else if (PRECEDENCE.containsKey(token.toUpperCase())) {  // 逻辑运算符
-                while (!stack.isEmpty() &&
-                        PRECEDENCE.getOrDefault(stack.peek(), 0) >= PRECEDENCE.get(token)) {
+            } else if (operator(token) != null) {  // 逻辑运算符
+                int precedence = PRECEDENCE.get(operator(token));
+                while (!stack.isEmpty() && !stack.peek().equals("(") &&
+                        PRECEDENCE.get(operator(stack.peek())) >= precedence) {
                     output.add(stack.pop());
                 }
                 stack.push(token);
@@ -145,68 +297,18 @@ class InfixToPostfixConverter {
     }
 }
 
-/**
- * 后缀表达式求值器
- */
-class PostfixEvaluator {
+public class Main {
     /**
-     * 计算后缀表达式的结果
-     * @param postfixTokens 后缀表达式列表形式
-     * @param invertedIndex 倒排索引
-     * @param allFiles      所有文件名的集合
-     * @return 匹配的文件名集合，hashset形式
+     * 用法：java Main [内存预算MB] [查询缓存MB]
+     * 索引段index.seg不存在时用SPIMI构建；之后新增、修改、删除的文档增量更新，不重建整个索引
+     * 输入 "explain 查询" 查看查询计划，"cache" 查看查询缓存的命中情况，
+     * "sync" 重新扫描文档目录，"merge" 把增量合并进段文件
      */
-    public static Set<String> evaluatePostfix(List<String> postfixTokens, Map<String, Set<String>> invertedIndex, Set<String> allFiles) {
-        // 栈用于存储某个检索词的索引集
-        Deque<Set<String>> stack = new ArrayDeque<>();
-        for (String token : postfixTokens) {
-            // token 是运算符
-            if (token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR") || token.equalsIgnoreCase("NOT")) {
-                Set<String> result;
-                if (token.equalsIgnoreCase("NOT")) {
-                    result = difference(stack.pop(), allFiles);
-                } else {
-                    // 对栈顶的两元素取交集/并集，把结果重新压入栈
-                    Set<String> set1 = stack.pop();
-                    Set<String> set2 = stack.pop();
-                    result = token.equalsIgnoreCase("AND") ? intersection(set1, set2) : union(set1, set2);
-                }
-                stack.push(result);
-            }
-            // token是关键词
-            else {
-                // 关键词，取倒排索引
-                stack.push(invertedIndex.getOrDefault(token, new HashSet<>()));
-            }
-        }
-        return stack.isEmpty() ? Collections.emptySet() : stack.pop();
-    }
-
-    private static Set<String> intersection(Set<String> set1, Set<String> set2) {
-        Set<String> result = new HashSet<>(set1);  // 创建 set1 的副本
-        result.retainAll(set2);                    // 保留 set1 中在 set2 中也存在的元素
-        return result;
-    }
-
-    private static Set<String> union(Set<String> set1, Set<String> set2) {
-        Set<String> result = new HashSet<>(set1);
-        result.addAll(set2);
-        return result;
-    }
-
-    private static Set<String> difference(Set<String> All, Set<String> set1) {
-        Set<String> result = new HashSet<>(set1);
-        result.removeAll(All);
-        return result;
-    }
-}
-
-public class Main {
-    public static void main(String[] args) {
-        String directoryPath = "dataset/article";
-        InvertedIndexBuilder indexBuilder = new InvertedIndexBuilder();
-        Map<String, Set<String>> invertedIndex = indexBuilder.buildIndex(directoryPath);
-        Set<String> allFiles = indexBuilder.getAllFileNames();  // 所有文件名的集合
+    public static void main(String[] args) throws IOException {
+        long memoryBudget = (args.length >= 1 ? Long.parseLong(args[0]) : 64) << 20;
+        LiveIndex live = openIndex(memoryBudget);
+        long cacheBytes = (args.length >= 2 ? Long.parseLong(args[1]) : 16) << 20;
+        QueryCache cache = new QueryCache(cacheBytes);
 
         Scanner sc = new Scanner(System.in);
         System.out.println("请输入查询语句：");
@@ -215,19 +317,60 @@ public class Main {
             System.out.print("> ");
             String query = sc.nextLine().trim();   // 去除前后空格
             if (query.equalsIgnoreCase("exit")) break;
+            if (query.equalsIgnoreCase("cache")) {
+                System.out.println(cache);
+                continue;
+            }
+            if (query.equalsIgnoreCase("sync")) {
+                System.out.println("变化的文件数：" + live.sync());
+                continue;
+            }
+            if (query.equalsIgnoreCase("merge")) {
+                live.merge();
+                System.out.println("合并完成，文档数：" + live.snapshot().allDocs().size());
+                continue;
+            }
+            // 一次查询只用同一个快照
+            InvertedIndex index = live.snapshot();
+            // "explain 查询" 打印查询计划及各结点的估计与实际代价
+            boolean explain = query.regionMatches(true, 0, "explain ", 0, 8);
+            if (explain) query = query.substring(8).trim();
 
             long startTime = System.nanoTime();
 
-            List<String> postfixTokens = InfixToPostfixConverter.toPostfix(query);
-            Set<String> resultFiles = PostfixEvaluator.evaluatePostfix(postfixTokens, invertedIndex, allFiles);
+            DocSet result;
+            QueryPlanner.Node plan = null;
+            QueryPlanner.Trace trace = null;
+            if (explain) {
+                // explain要记录每个结点的实际代价，所以只取缓存的计划、不取缓存的结果
+                trace = new QueryPlanner.Trace();
+                plan = cache.plan(query, index);
+                result = plan.execute(index, trace);
+            } else {
+                result = cache.search(query, index);
+            }
 
             long endTime = System.nanoTime();
+            if (explain) System.out.print(plan.explain(trace));
 
+            // 文档编号换回文件名
+            List<String> resultFiles = new ArrayList<>(result.size());
+            for (int docId : result.toArray()) {
+                resultFiles.add(index.docName(docId));
+            }
             System.out.println("查询用时：" + (endTime - startTime) / 1_000_000.0 + " ms");
             System.out.println("查询结果：" + (resultFiles.isEmpty() ? "无匹配文件" : resultFiles));
         }
 
         sc.close();
+        live.close();
     }
-}
 
+    /**
+     * 打开dataset/article的索引：段文件不存在时用SPIMI构建，之后目录中的变化增量地加入
+     * @param memoryBudget 构建时倒排记录表的内存预算（字节）
+     */
+    static LiveIndex openIndex(long memoryBudget) throws IOException {
+        return LiveIndex.open(Paths.get("index.seg"), "dataset/article", memoryBudget);
+    }
+}
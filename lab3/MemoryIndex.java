@@ -0,0 +1,33 @@
+import java.util.*;
+
+/**
+ * 内存中的倒排索引：文件名数组 + 词项到倒排记录表（数组或位图）的HashMap
+ */
+class MemoryIndex implements InvertedIndex {
+    private final String[] docNames;
+    private final Map<String, DocSet> postings;
+
+    MemoryIndex(String[] docNames, Map<String, DocSet> postings) {
+        this.docNames = docNames;
+        this.postings = postings;
+    }
+
+    @Override
+    public int docCount() {
+        return docNames.length;
+    }
+
+    @Override
+    public String docName(int docId) {
+        return docNames[docId];
+    }
+
+    @Override
+    public DocSet postings(String term) {
+        return postings.getOrDefault(term, PostingList.EMPTY);
+    }
+
+    public Set<String> terms() {
+        return postings.keySet();
+    }
+}
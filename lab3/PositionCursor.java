@@ -0,0 +1,64 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * 一个词项的位置游标：ids是它的倒排记录表，blob是按同样顺序排列的各文档位置，
+ * 每篇文档 [字节数, VByte] [位置差值, VByte...]。按文档编号升序读取，跳过的文档只读字节数不解码。
+ */
+class PositionCursor implements PositionalIndex.Positions {
+    private final int[] ids;
+    private final ByteBuffer blob;
+    private int rank;  // 下一篇未读文档在记录表中的序号
+
+    PositionCursor(int[] ids, ByteBuffer blob) {
+        this.ids = ids;
+        this.blob = blob;
+    }
+
+    @Override
+    public int[] get(int docId) {
+        while (rank < ids.length && ids[rank] < docId) {
+            skip();
+        }
+        if (rank == ids.length || ids[rank] != docId) return null;
+        rank++;
+        int end = VByte.read(blob) + blob.position();
+        int[] result = new int[8];
+        int n = 0;
+        int prev = 0;
+        while (blob.position() < end) {
+            prev += VByte.read(blob);
+            if (n == result.length) result = Arrays.copyOf(result, n * 2);
+            result[n++] = prev;
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * 当前文档的编号，读完时返回BlockPostings.NO_MORE
+     */
+    int docId() {
+        return rank < ids.length ? ids[rank] : BlockPostings.NO_MORE;
+    }
+
+    /**
+     * 跳过当前文档
+     */
+    void skip() {
+        int length = VByte.read(blob);
+        blob.position(blob.position() + length);
+        rank++;
+    }
+
+    /**
+     * 当前文档的位置原样复制到out（含字节数前缀），并前进到下一篇；合并段时用，不解码
+     */
+    void copyTo(java.io.ByteArrayOutputStream out) {
+        int start = blob.position();
+        int length = VByte.read(blob);
+        int end = blob.position() + length;
+        out.write(blob.array(), blob.arrayOffset() + start, end - start);
+        blob.position(end);
+        rank++;
+    }
+}
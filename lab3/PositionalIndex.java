@@ -0,0 +1,24 @@
+/**
+ * 带位置信息的倒排索引，用于短语查询和邻近查询
+ * 位置与倒排记录表分开存放，普通的布尔查询不读取位置。
+ * 位置是词在文档分词结果中的序号（不计空白），短语中相邻的词位置相差1。
+ */
+interface PositionalIndex extends InvertedIndex {
+    /**
+     * 词项在各文档中的位置
+     * @param term 词项
+     * @return 按文档编号升序依次读取的游标
+     */
+    Positions positions(String term);
+
+    /**
+     * 位置游标：只能按文档编号升序读取，跳过的文档不解码
+     */
+    interface Positions {
+        /**
+         * @param docId 文档编号，须大于上一次调用时的编号
+         * @return 词项在该文档中的位置（升序），不出现时返回null
+         */
+        int[] get(int docId);
+    }
+}
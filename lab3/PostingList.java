@@ -0,0 +1,191 @@
+import java.util.Arrays;
+
+/**
+ * 倒排记录表：升序排列、无重复的文档编号数组，用于稀疏的词项
+ * AND用跳跃式（galloping）求交，代价与较短的表成正比；OR、差集用线性归并；
+ * 与位图运算时逐个查位。结果都是新集合，操作数本身不可变，可被多个查询共享。
+ */
+class PostingList extends DocSet {
+    static final PostingList EMPTY = new PostingList(new int[0], 0);
+
+    private final int[] ids;
+    private final int size;
+
+    PostingList(int[] ids, int size) {
+        this.ids = ids;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public long memoryBytes() {
+        return 32 + 4L * ids.length;
+    }
+
+    public int get(int i) {
+        return ids[i];
+    }
+
+    @Override
+    public boolean contains(int docId) {
+        int i = gallop(ids, 0, size, docId);
+        return i < size && ids[i] == docId;
+    }
+
+    @Override
+    public int[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * 求交集：遍历较短的表，在较长的表中跳跃查找
+     */
+    @Override
+    public DocSet and(DocSet set) {
+        if (set instanceof DocBitmap) {
+            // 与位图求交：逐个查位
+            int[] res = new int[size];
+            int n = 0;
+            for (int i = 0; i < size; i++) {
+                if (set.contains(ids[i])) res[n++] = ids[i];
+            }
+            return new PostingList(res, n);
+        }
+        PostingList other = (PostingList) set;
+        PostingList small = size <= other.size ? this : other;
+        PostingList large = small == this ? other : this;
+        int[] res = new int[small.size];
+        int n = 0;
+        int lo = 0;
+        for (int i = 0; i < small.size && lo < large.size; i++) {
+            int target = small.ids[i];
+            lo = gallop(large.ids, lo, large.size, target);
+            if (lo < large.size && large.ids[lo] == target) {
+                res[n++] = target;
+                lo++;
+            }
+        }
+        return new PostingList(res, n);
+    }
+
+    /**
+     * 求并集：线性归并
+     */
+    @Override
+    public DocSet or(DocSet set) {
+        if (set instanceof DocBitmap) return set.or(this);
+        PostingList other = (PostingList) set;
+        int[] res = new int[size + other.size];
+        int i = 0, j = 0, n = 0;
+        while (i < size && j < other.size) {
+            int a = ids[i], b = other.ids[j];
+            if (a < b) {
+                res[n++] = a;
+                i++;
+            } else if (a > b) {
+                res[n++] = b;
+                j++;
+            } else {
+                res[n++] = a;
+                i++;
+                j++;
+            }
+        }
+        while (i < size) res[n++] = ids[i++];
+        while (j < other.size) res[n++] = other.ids[j++];
+        return new PostingList(res, n);
+    }
+
+    /**
+     * 求差集 this - other：遍历this，在other中跳跃查找
+     */
+    @Override
+    public DocSet andNot(DocSet set) {
+        int[] res = new int[size];
+        int n = 0;
+        if (set instanceof DocBitmap) {
+            for (int i = 0; i < size; i++) {
+                if (!set.contains(ids[i])) res[n++] = ids[i];
+            }
+            return new PostingList(res, n);
+        }
+        PostingList other = (PostingList) set;
+        int lo = 0;
+        for (int i = 0; i < size; i++) {
+            int target = ids[i];
+            lo = gallop(other.ids, lo, other.size, target);
+            if (lo >= other.size || other.ids[lo] != target) {
+                res[n++] = target;
+            }
+        }
+        return new PostingList(res, n);
+    }
+
+    /**
+     * 求补集：稀疏表的补集是稠密的，在全集位图上清掉本表的位
+     */
+    @Override
+    public DocSet not(int n) {
+        return DocBitmap.all(n).andNot(this);
+    }
+
+    /**
+     * 在a[from, to)中找第一个 >= target 的位置：先按1, 2, 4, 8...的步长向前跳，再在最后一段里二分
+     */
+    static int gallop(int[] a, int from, int to, int target) {
+        if (from >= to || a[from] >= target) return from;
+        int step = 1;
+        int lo = from;  // a[lo] < target
+        int hi = from + 1;
+        while (hi < to && a[hi] < target) {
+            lo = hi;
+            step <<= 1;
+            hi = from + step;
+        }
+        if (hi > to) hi = to;
+        // a[lo] < target <= a[hi]（或hi == to）
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (a[mid] < target) lo = mid;
+            else hi = mid;
+        }
+        return hi;
+    }
+
+    /**
+     * 构建倒排记录表，按升序追加文档编号，连续重复的编号只记一次
+     */
+    static class Builder {
+        private int[] ids = new int[4];
+        private int size;
+
+        public void add(int id) {
+            if (size > 0 && ids[size - 1] == id) return;
+            if (size == ids.length) ids = Arrays.copyOf(ids, size * 2);
+            ids[size++] = id;
+        }
+
+        /**
+         * 追加另一个构建器中的编号，要求它们都大于本构建器中已有的编号
+         */
+        public void addAll(Builder other) {
+            for (int i = 0; i < other.size; i++) add(other.ids[i]);
+        }
+
+        public PostingList build() {
+            return new PostingList(Arrays.copyOf(ids, size), size);
+        }
+
+        /**
+         * 按密度选择数组或位图表示
+         * @param n 文档总数
+         */
+        public DocSet build(int n) {
+            return DocSet.isDense(size, n) ? DocBitmap.of(ids, size, n) : build();
+        }
+    }
+}
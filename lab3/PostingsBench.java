@@ -0,0 +1,128 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * 倒排记录表压缩的基准测试
+ * 对dataset/article建索引，再把语料按倍数放大（第j份拷贝的文档编号加上 j×文档数），
+ * 比较原始int数组、VByte、PForDelta三种表示的大小和解码吞吐量（编号/秒），
+ * 以及短表与长表求交集时整表解码与按跳表前进两种做法的耗时。
+ * 用法：java PostingsBench [放大倍数,逗号分隔] [预热轮数] [测量轮数]
+ */
+public class PostingsBench {
+    private static volatile long sink;  // 吞掉解码结果，防止被JIT当作死代码消除
+
+    public static void main(String[] args) throws IOException {
+        int[] scales = Arrays.stream((args.length >= 1 ? args[0] : "1,100,1000").split(","))
+                .map(String::trim).mapToInt(Integer::parseInt).toArray();
+        int warmup = args.length >= 2 ? Integer.parseInt(args[1]) : 5;
+        int iterations = args.length >= 3 ? Integer.parseInt(args[2]) : 10;
+
+        MemoryIndex index = new InvertedIndexBuilder().buildIndex("dataset/article");
+        List<String> terms = new ArrayList<>(index.terms());
+        Collections.sort(terms);
+
+        for (int scale : scales) {
+            // 放大后的记录表
+            int n = index.docCount();
+            List<int[]> lists = new ArrayList<>();
+            long postings = 0;
+            for (String term : terms) {
+                int[] ids = index.postings(term).toArray();
+                int[] scaled = new int[ids.length * scale];
+                for (int j = 0; j < scale; j++) {
+                    for (int i = 0; i < ids.length; i++) scaled[j * ids.length + i] = j * n + ids[i];
+                }
+                lists.add(scaled);
+                postings += scaled.length;
+            }
+
+            List<byte[]> vbyte = new ArrayList<>();
+            List<byte[]> pfor = new ArrayList<>();
+            long vbyteBytes = 0, pforBytes = 0;
+            for (int[] ids : lists) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                VByte.writeDeltas(new DataOutputStream(bytes), ids, ids.length);
+                vbyte.add(bytes.toByteArray());
+                vbyteBytes += bytes.size();
+                byte[] encoded = BlockPostings.encode(ids, ids.length);
+                pfor.add(encoded);
+                pforBytes += encoded.length;
+            }
+
+            System.out.printf("scale %d: %d docs, %d terms, %d postings%n", scale, n * scale, lists.size(), postings);
+            System.out.printf("  %-12s %14s %10s %16s%n", "codec", "bytes", "bits/id", "decode ids/s");
+            System.out.printf("  %-12s %14d %10.2f %16s%n", "int[]", postings * 4, 32.0, "-");
+            double vbyteRate = measure(warmup, iterations, postings, () -> {
+                long sum = 0;
+                for (int t = 0; t < vbyte.size(); t++) {
+                    sum += VByte.readDeltas(ByteBuffer.wrap(vbyte.get(t)), lists.get(t).length).length;
+                }
+                return sum;
+            });
+            System.out.printf("  %-12s %14d %10.2f %16.0f%n", "VByte", vbyteBytes, vbyteBytes * 8.0 / postings, vbyteRate);
+            double pforRate = measure(warmup, iterations, postings, () -> {
+                long sum = 0;
+                for (byte[] encoded : pfor) sum += BlockPostings.decode(ByteBuffer.wrap(encoded)).length;
+                return sum;
+            });
+            System.out.printf("  %-12s %14d %10.2f %16.0f%n", "PForDelta", pforBytes, pforBytes * 8.0 / postings, pforRate);
+
+            intersect(lists, pfor, warmup, iterations);
+        }
+    }
+
+    // 最长的若干个表各与一个随机短表求交集：整表解码后归并 vs 跳表游标
+    private static void intersect(List<int[]> lists, List<byte[]> pfor, int warmup, int iterations) {
+        Integer[] order = new Integer[lists.size()];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, Comparator.comparingInt(i -> -lists.get(i).length));
+        int pairs = Math.min(20, order.length);
+        int[] longs = new int[pairs];
+        List<int[]> shortLists = new ArrayList<>();
+        Random random = new Random(42);
+        for (int p = 0; p < pairs; p++) {
+            longs[p] = order[p];
+            // 短表：从长表的编号范围里随机取约1/1000，模拟长表与一个稀有词求交
+            int[] ids = lists.get(order[p]);
+            int last = ids[ids.length - 1];
+            TreeSet<Integer> sample = new TreeSet<>();
+            for (int k = 0; k < Math.max(1, ids.length / 1000); k++) sample.add(random.nextInt(last + 1));
+            shortLists.add(sample.stream().mapToInt(Integer::intValue).toArray());
+        }
+
+        long[] decoded = new long[2];
+        double full = measure(warmup, iterations, pairs, () -> {
+            long sum = 0;
+            for (int p = 0; p < pairs; p++) {
+                int[] ids = BlockPostings.decode(ByteBuffer.wrap(pfor.get(longs[p])));
+                int[] small = shortLists.get(p);
+                sum += new PostingList(ids, ids.length).and(new PostingList(small, small.length)).size();
+            }
+            return sum;
+        });
+        double skip = measure(warmup, iterations, pairs, () -> {
+            long sum = 0;
+            decoded[0] = decoded[1] = 0;
+            for (int p = 0; p < pairs; p++) {
+                BlockPostings.Cursor cursor = new BlockPostings.Cursor(ByteBuffer.wrap(pfor.get(longs[p])));
+                int[] small = shortLists.get(p);
+                sum += cursor.intersect(small, small.length).size();
+                decoded[0] += cursor.decodedBlocks();
+                decoded[1] += (cursor.size() + BlockPostings.BLOCK - 1) / BlockPostings.BLOCK;
+            }
+            return sum;
+        });
+        System.out.printf("  intersect %d pairs: full decode %.0f pairs/s, skip %.0f pairs/s, blocks decoded %d/%d%n",
+                pairs, full, skip, decoded[0], decoded[1]);
+    }
+
+    // 预热warmup轮后测量iterations轮，返回每秒处理的单位数
+    private static double measure(int warmup, int iterations, long units, java.util.function.LongSupplier task) {
+        for (int i = 0; i < warmup; i++) sink += task.getAsLong();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) sink += task.getAsLong();
+        long nanos = System.nanoTime() - start;
+        return units * iterations * 1e9 / nanos;
+    }
+}
@@ -0,0 +1,207 @@
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 布尔查询的两级缓存
+ * 第一级：规范化的查询文本 -> 查询计划，重复的查询不再分词、转后缀、生成计划；
+ * 第二级：索引版本 + 计划的规范形式 -> 结果集合，写法不同但计划相同的查询（如 a AND b 与 b AND a）共用一个结果。
+ * 两级都是按字节数限制大小的分段LRU，淘汰最久未访问的项直到总字节数不超过容量。
+ * 计划依赖文档频率、结果依赖索引内容，所以缓存记下生成它们的索引及其版本，
+ * 索引更新（换了一个索引对象或版本号变化）后第一次访问时整体清空。
+ * 更新时可能仍有查询在旧快照上执行：结果的键带版本号，它们晚到的结果不会被新版本的查询取到；
+ * 版本号比当前记下的旧的索引也不会让缓存退回旧版本。
+ */
+class QueryCache {
+    private final Lru<String, QueryPlanner.Node> plans;
+    private final Lru<String, DocSet> results;
+    private final LongAdder planHits = new LongAdder();
+    private final LongAdder planMisses = new LongAdder();
+    private final LongAdder resultHits = new LongAdder();
+    private final LongAdder resultMisses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private volatile Generation generation;
+
+    /**
+     * @param capacityBytes 缓存占用的字节数上限，计划占1/8，结果占其余部分
+     */
+    public QueryCache(long capacityBytes) {
+        plans = new Lru<>(capacityBytes / 8);
+        results = new Lru<>(capacityBytes - capacityBytes / 8);
+    }
+
+    /**
+     * 执行查询，计划和结果都优先取缓存
+     * @param query 中缀表达式
+     * @param index 倒排索引
+     * @return 匹配的文档集合
+     */
+    public DocSet search(String query, InvertedIndex index) {
+        QueryPlanner.Node plan = plan(query, index);
+        String key = index.version() + ":" + plan.canonical();
+        DocSet result = results.get(key);
+        if (result != null) {
+            resultHits.increment();
+            return result;
+        }
+        resultMisses.increment();
+        // 执行不在锁内进行；两个线程同时未命中同一计划时各算一次，结果相同
+        result = plan.execute(index);
+        results.put(key, result, key.length() * 2L + result.memoryBytes());
+        return result;
+    }
+
+    /**
+     * 取查询计划，未命中时解析并生成
+     */
+    public QueryPlanner.Node plan(String query, InvertedIndex index) {
+        checkGeneration(index);
+        String key = normalize(query);
+        QueryPlanner.Node plan = plans.get(key);
+        if (plan != null) {
+            planHits.increment();
+            return plan;
+        }
+        planMisses.increment();
+        plan = QueryPlanner.plan(InfixToPostfixConverter.toPostfix(key), index);
+        plans.put(key, plan, key.length() * 2L + plan.nodeCount() * 64L);
+        return plan;
+    }
+
+    /**
+     * 规范化查询文本：按词切开，运算符转为大写，以单个空格连接
+     */
+    static String normalize(String query) {
+        StringBuilder sb = new StringBuilder();
+        for (String token : InfixToPostfixConverter.tokenize(query)) {
+            if (sb.length() > 0) sb.append(' ');
+            if (token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR") || token.equalsIgnoreCase("NOT")) {
+                token = token.toUpperCase();
+            }
+            sb.append(token);
+        }
+        return sb.toString();
+    }
+
+    // 索引对象或版本号变了就清空缓存；比当前版本旧的快照不清空，也不改记下的版本
+    private void checkGeneration(InvertedIndex index) {
+        long version = index.version();
+        if (isCurrentOrOlder(generation, index, version)) return;
+        synchronized (this) {
+            if (isCurrentOrOlder(generation, index, version)) return;
+            clear();
+            generation = new Generation(index, version);
+        }
+    }
+
+    private static boolean isCurrentOrOlder(Generation current, InvertedIndex index, long version) {
+        return current != null && (current.index == index && current.version == version || version < current.version);
+    }
+
+    public void clear() {
+        plans.clear();
+        results.clear();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("plans: hits=%d, misses=%d; results: hits=%d, misses=%d, bytes=%d; evictions=%d",
+                planHits.sum(), planMisses.sum(), resultHits.sum(), resultMisses.sum(),
+                results.bytes(), evictions.sum());
+    }
+
+    private static class Generation {
+        final InvertedIndex index;
+        final long version;
+
+        Generation(InvertedIndex index, long version) {
+            this.index = index;
+            this.version = version;
+        }
+    }
+
+    /**
+     * 按字节数限制大小的分段LRU：按键的哈希值分段，各段独立加锁
+     */
+    private class Lru<K, V> {
+        private final List<Stripe> stripes = new ArrayList<>();
+
+        Lru(long capacityBytes) {
+            // 段数取2的幂，不超过64
+            int n = Integer.highestOneBit(Math.max(1, Math.min(64, Runtime.getRuntime().availableProcessors() * 4)));
+            for (int i = 0; i < n; i++) stripes.add(new Stripe(capacityBytes / n));
+        }
+
+        private Stripe stripe(K key) {
+            int h = key.hashCode();
+            return stripes.get((h ^ (h >>> 16)) & (stripes.size() - 1));
+        }
+
+        V get(K key) {
+            Stripe stripe = stripe(key);
+            synchronized (stripe) {
+                Entry<V> entry = stripe.get(key);
+                return entry == null ? null : entry.value;
+            }
+        }
+
+        void put(K key, V value, long weight) {
+            Stripe stripe = stripe(key);
+            synchronized (stripe) {
+                if (weight > stripe.capacity) return;  // 比一段的容量还大，不缓存
+                Entry<V> old = stripe.put(key, new Entry<>(value, weight));
+                if (old != null) stripe.bytes -= old.weight;
+                stripe.bytes += weight;
+                // 从最久未访问的一端淘汰，直到不超过容量
+                Iterator<Entry<V>> it = stripe.values().iterator();
+                while (stripe.bytes > stripe.capacity && it.hasNext()) {
+                    Entry<V> eldest = it.next();
+                    if (eldest.value == value) break;
+                    stripe.bytes -= eldest.weight;
+                    it.remove();
+                    evictions.increment();
+                }
+            }
+        }
+
+        void clear() {
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    stripe.clear();
+                    stripe.bytes = 0;
+                }
+            }
+        }
+
+        long bytes() {
+            long total = 0;
+            for (Stripe stripe : stripes) {
+                synchronized (stripe) {
+                    total += stripe.bytes;
+                }
+            }
+            return total;
+        }
+
+        // 一段：按访问顺序排列的LinkedHashMap，记录已用字节数
+        private class Stripe extends LinkedHashMap<K, Entry<V>> {
+            private static final long serialVersionUID = 1L;
+            final long capacity;
+            long bytes;
+
+            Stripe(long capacity) {
+                super(16, 0.75f, true);
+                this.capacity = capacity;
+            }
+        }
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * QueryServer的压力测试客户端
+ * 若干个客户端各开一个连接，在给定时间内不停地发查询（每个客户端从查询列表中随机取），
+ * 统计客户端看到的吞吐量和延迟分布，最后取回服务端的STATS。
+ * 用法：java QueryLoad [端口] [客户端数] [秒数] [查询文件，每行一个查询]
+ */
+public class QueryLoad {
+    private static final String[] DEFAULT_QUERIES = {
+            "中方 AND 合作", "中方 AND NOT 合作", "经济 OR 能源", "(经济 OR 能源) AND NOT 美国",
+            "美国 AND 中国 AND 合作", "NOT 中国", "发展 AND (美国 OR 日本) AND NOT 台湾",
+            "记者 AND 发言人 AND 外交部 AND 问题", "乌克兰 OR 俄罗斯 OR 欧盟", "外交部 NEAR/2 发言人",
+    };
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : 7070;
+        int clients = args.length >= 2 ? Integer.parseInt(args[1]) : 8;
+        int seconds = args.length >= 3 ? Integer.parseInt(args[2]) : 10;
+        List<String> queries = args.length >= 4
+                ? Files.readAllLines(Paths.get(args[3]), StandardCharsets.UTF_8)
+                : Arrays.asList(DEFAULT_QUERIES);
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder busy = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int c = 0; c < clients; c++) {
+            long seed = c;
+            futures.add(pool.submit(() -> {
+                Random random = new Random(seed);
+                while (System.nanoTime() < deadline) {
+                    // 连接数已满时服务端回复BUSY后关闭连接，稍后重连
+                    try (Connection connection = new Connection(port)) {
+                        while (System.nanoTime() < deadline) {
+                            String query = queries.get(random.nextInt(queries.size()));
+                            long start = System.nanoTime();
+                            String reply = connection.send(query);
+                            latency.record(System.nanoTime() - start);
+                            if (reply.startsWith("BUSY")) busy.increment();
+                            else if (!reply.startsWith("OK")) errors.increment();
+                        }
+                    } catch (IOException e) {
+                        Thread.sleep(10);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (Future<?> future : futures) future.get();
+        pool.shutdown();
+
+        System.out.printf("clients=%d, %d s, %.0f queries/s, busy=%d, errors=%d%n",
+                clients, seconds, latency.count() / (double) seconds, busy.sum(), errors.sum());
+        System.out.println("client " + latency);
+        try (Connection connection = new Connection(port)) {
+            System.out.println("server " + connection.send("STATS").substring(3));
+        }
+    }
+
+    // 一个连接：发一行，读一行
+    private static class Connection implements Closeable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final Writer out;
+
+        Connection(int port) throws IOException {
+            socket = new Socket("127.0.0.1", port);
+            socket.setTcpNoDelay(true);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+        }
+
+        String send(String line) throws IOException {
+            out.write(line);
+            out.write('\n');
+            out.flush();
+            String reply = in.readLine();
+            if (reply == null) throw new EOFException("服务端关闭了连接");
+            return reply;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.write("QUIT\n");
+            out.flush();
+            socket.close();
+        }
+    }
+}
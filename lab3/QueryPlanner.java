@@ -0,0 +1,566 @@
+import java.util.*;
+
+/**
+ * 布尔查询计划器
+ * 把后缀表达式还原成运算树，再改写成更便宜的等价形式：
+ * 1. 展开嵌套的同类运算，a AND (b AND c) 变成一个三元AND，OR同理；
+ * 2. AND的操作数按估计的文档数从小到大排序，先求最小的交集；
+ * 3. AND下的 NOT x 不求补集，改为从当前结果中减去x；
+ * 4. AND的中间结果为空时立即返回，不再读剩下的记录表。
+ * 短语（"..."）和邻近（a NEAR/n b）查询先按文档编号求交，只对留下的文档读取位置做归并。
+ * 计划生成后不再修改，可被多个线程共享；执行时传入Trace记录每个结点的实际文档数和耗时，
+ * explain()把估计值和实际值一起打印出来。
+ */
+class QueryPlanner {
+    /**
+     * 由后缀表达式生成查询计划
+     * @param postfixTokens 后缀表达式列表形式
+     * @param index 倒排索引，用于读取文档频率
+     * @return 查询计划的根结点
+     */
+    public static Node plan(List<String> postfixTokens, InvertedIndex index) {
+        Deque<Node> stack = new ArrayDeque<>();
+        for (String token : postfixTokens) {
+            if (token.equalsIgnoreCase("NOT")) {
+                stack.push(new Not(stack.pop()));
+            } else if (token.equalsIgnoreCase("AND") || token.equalsIgnoreCase("OR")) {
+                Node right = stack.pop();
+                Node left = stack.pop();
+                Group group = token.equalsIgnoreCase("AND") ? new And() : new Or();
+                group.add(left);
+                group.add(right);
+                stack.push(group);
+            } else if ("NEAR".equals(InfixToPostfixConverter.operator(token))) {
+                Node right = stack.pop();
+                Node left = stack.pop();
+                stack.push(new Near(Phrase.of(left), Phrase.of(right), Integer.parseInt(token.substring(5))));
+            } else if (token.length() >= 2 && token.startsWith("\"") && token.endsWith("\"")) {
+                stack.push(phrase(token.substring(1, token.length() - 1)));
+            } else {
+                stack.push(new Term(token));
+            }
+        }
+        if (stack.isEmpty()) return new Term(null);
+        Node root = stack.pop();
+        root.estimate(index);
+        return root;
+    }
+
+    // 短语按建索引时的方式分词；无效词（单字、标点等）不在索引中，只占一个位置
+    private static Node phrase(String text) {
+        List<String> words = InvertedIndexBuilder.analyze(text);
+        List<String> terms = new ArrayList<>();
+        List<Integer> offsets = new ArrayList<>();
+        for (int i = 0; i < words.size(); i++) {
+            if (InvertedIndexBuilder.isValidWord(words.get(i))) {
+                terms.add(words.get(i));
+                offsets.add(i);
+            }
+        }
+        if (terms.isEmpty()) return new Term(null);
+        if (words.size() == 1) return new Term(terms.get(0));
+        return new Phrase(terms.toArray(new String[0]), offsets.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    private static PositionalIndex positional(InvertedIndex index) {
+        if (index instanceof PositionalIndex) return (PositionalIndex) index;
+        throw new IllegalStateException("该索引没有位置信息，不支持短语和邻近查询");
+    }
+
+    /**
+     * 查询计划的结点
+     */
+    abstract static class Node {
+        int estimatedSize;   // 估计的结果文档数
+        long estimatedCost;  // 估计要处理的编号个数（读取和比较）
+
+        // 自底向上估计结果大小和代价，并完成操作数排序
+        abstract void estimate(InvertedIndex index);
+
+        // 计算本结点的结果，子结点通过execute(index, trace)执行
+        abstract DocSet evaluate(InvertedIndex index, Trace trace);
+
+        /**
+         * 执行查询
+         */
+        public DocSet execute(InvertedIndex index) {
+            return execute(index, null);
+        }
+
+        /**
+         * 执行查询，trace不为null时记录各结点的实际文档数和耗时
+         */
+        public DocSet execute(InvertedIndex index, Trace trace) {
+            if (trace == null) return evaluate(index, null);
+            long start = System.nanoTime();
+            DocSet result = evaluate(index, trace);
+            trace.record(this, result.size(), System.nanoTime() - start);
+            return result;
+        }
+
+        /**
+         * 结点数，用于估计计划占用的内存
+         */
+        public int nodeCount() {
+            int count = 1;
+            for (Node child : children()) count += child.nodeCount();
+            return count;
+        }
+
+        abstract String label();
+
+        /**
+         * 计划的规范形式：与操作数的排列顺序无关，相同的计划得到相同的字符串，用作结果缓存的键
+         */
+        String canonical() {
+            List<String> parts = new ArrayList<>();
+            for (Node child : children()) parts.add(child.canonical());
+            if (this instanceof Group) Collections.sort(parts);
+            return label() + "(" + String.join(",", parts) + ")";
+        }
+
+        List<Node> children() {
+            return Collections.emptyList();
+        }
+
+        /**
+         * 以缩进树的形式输出计划，每个结点一行：运算、估计文档数/代价、实际文档数/耗时
+         * @param trace 执行时的记录
+         */
+        public String explain(Trace trace) {
+            StringBuilder sb = new StringBuilder();
+            explain(sb, 0, trace);
+            return sb.toString();
+        }
+
+        private void explain(StringBuilder sb, int depth, Trace trace) {
+            for (int i = 0; i < depth; i++) sb.append("  ");
+            long[] actual = trace.stats.get(this);
+            sb.append(label());
+            if (actual != null && actual[2] != 0) sb.append(" (filtered)");
+            sb.append("  (est rows=").append(estimatedSize).append(" cost=").append(estimatedCost);
+            if (actual != null) {
+                sb.append(", actual rows=").append(actual[0])
+                        .append(" time=").append(String.format("%.3f", actual[1] / 1_000_000.0)).append(" ms");
+            } else {
+                sb.append(", not executed");
+            }
+            sb.append(")\n");
+            for (Node child : children()) child.explain(sb, depth + 1, trace);
+        }
+    }
+
+    /**
+     * 一次执行的记录：结点 -> [实际文档数, 耗时ns, 是否直接与前面的交集求交]
+     */
+    static class Trace {
+        private final Map<Node, long[]> stats = new IdentityHashMap<>();
+
+        void record(Node node, int size, long nanos) {
+            stats.put(node, new long[]{size, nanos, 0});
+        }
+
+        void recordFiltered(Node node, int size, long nanos) {
+            stats.put(node, new long[]{size, nanos, 1});
+        }
+    }
+
+    /**
+     * 单个词项：读取倒排记录表
+     */
+    static class Term extends Node {
+        final String term;
+
+        Term(String term) {
+            this.term = term;
+        }
+
+        @Override
+        void estimate(InvertedIndex index) {
+            estimatedSize = term == null ? 0 : index.docFreq(term);
+            estimatedCost = estimatedSize;
+        }
+
+        @Override
+        DocSet evaluate(InvertedIndex index, Trace trace) {
+            return term == null ? PostingList.EMPTY : index.postings(term);
+        }
+
+        @Override
+        String label() {
+            return "TERM " + term;
+        }
+
+        @Override
+        String canonical() {
+            return term == null ? "()" : "'" + term.replace("'", "''") + "'";
+        }
+    }
+
+    /**
+     * 短语：各词在文档中的位置依次相差给定的偏移
+     */
+    static class Phrase extends Node {
+        final String[] terms;
+        final int[] offsets;  // 各词相对短语开头的位置
+
+        Phrase(String[] terms, int[] offsets) {
+            this.terms = terms;
+            this.offsets = offsets;
+        }
+
+        // NEAR的操作数：单个词项看作只有一个词的短语
+        static Phrase of(Node node) {
+            if (node instanceof Phrase) return (Phrase) node;
+            if (node instanceof Term) {
+                String term = ((Term) node).term;
+                return term == null ? new Phrase(new String[0], new int[0]) : new Phrase(new String[]{term}, new int[]{0});
+            }
+            throw new IllegalArgumentException("NEAR的两边须为词项或短语");
+        }
+
+        @Override
+        void estimate(InvertedIndex index) {
+            long cost = 0;
+            int size = terms.length == 0 ? 0 : Integer.MAX_VALUE;
+            for (String term : terms) {
+                int df = index.docFreq(term);
+                size = Math.min(size, df);
+                cost += 2L * df;  // 记录表与位置各读一遍
+            }
+            estimatedSize = size;
+            estimatedCost = cost;
+        }
+
+        @Override
+        DocSet evaluate(InvertedIndex index, Trace trace) {
+            DocSet docs = candidates(index, null);
+            if (docs.isEmpty()) return docs;
+            PositionalIndex.Positions[] cursors = cursors(positional(index));
+            PostingList.Builder matches = new PostingList.Builder();
+            for (int docId : docs.toArray()) {
+                if (starts(cursors, docId).length > 0) matches.add(docId);
+            }
+            return matches.build(index.docCount());
+        }
+
+        /**
+         * 含有全部词的文档：按文档频率从小到大求交
+         * @param filter 再与之求交的集合，为null时不过滤
+         */
+        DocSet candidates(InvertedIndex index, DocSet filter) {
+            if (terms.length == 0) return PostingList.EMPTY;
+            String[] order = terms.clone();
+            Arrays.sort(order, Comparator.comparingInt(index::docFreq));
+            DocSet result = filter;
+            for (String term : order) {
+                result = result == null ? index.postings(term) : index.postingsAnd(term, result);
+                if (result.isEmpty()) break;
+            }
+            return result;
+        }
+
+        PositionalIndex.Positions[] cursors(PositionalIndex index) {
+            PositionalIndex.Positions[] cursors = new PositionalIndex.Positions[terms.length];
+            for (int k = 0; k < terms.length; k++) cursors[k] = index.positions(terms[k]);
+            return cursors;
+        }
+
+        /**
+         * 短语在文档中出现的起始位置（升序），文档编号须按升序依次传入
+         */
+        int[] starts(PositionalIndex.Positions[] cursors, int docId) {
+            int[][] positions = new int[terms.length][];
+            for (int k = 0; k < terms.length; k++) {
+                positions[k] = cursors[k].get(docId);
+                if (positions[k] == null) return new int[0];
+            }
+            int[] starts = new int[positions[0].length];
+            int n = 0;
+            for (int p : positions[0]) {
+                int start = p - offsets[0];
+                boolean match = true;
+                for (int k = 1; k < terms.length && match; k++) {
+                    match = Arrays.binarySearch(positions[k], start + offsets[k]) >= 0;
+                }
+                if (match) starts[n++] = start;
+            }
+            return Arrays.copyOf(starts, n);
+        }
+
+        @Override
+        String label() {
+            StringBuilder sb = new StringBuilder("PHRASE \"");
+            for (int k = 0; k < terms.length; k++) {
+                if (k > 0) sb.append(offsets[k] - offsets[k - 1] > 1 ? " * " : " ");
+                sb.append(terms[k]);
+            }
+            return sb.append('"').toString();
+        }
+
+        @Override
+        String canonical() {
+            StringBuilder sb = new StringBuilder("PHRASE(");
+            for (int k = 0; k < terms.length; k++) {
+                sb.append('\'').append(terms[k].replace("'", "''")).append("'@").append(offsets[k] - offsets[0]).append(',');
+            }
+            return sb.append(')').toString();
+        }
+    }
+
+    /**
+     * 邻近：两边（词项或短语）的起始位置相差不超过distance，先后不限
+     */
+    static class Near extends Node {
+        final Phrase left;
+        final Phrase right;
+        final int distance;
+
+        Near(Phrase left, Phrase right, int distance) {
+            this.left = left;
+            this.right = right;
+            this.distance = distance;
+        }
+
+        @Override
+        void estimate(InvertedIndex index) {
+            left.estimate(index);
+            right.estimate(index);
+            estimatedSize = Math.min(left.estimatedSize, right.estimatedSize);
+            estimatedCost = left.estimatedCost + right.estimatedCost;
+        }
+
+        @Override
+        DocSet evaluate(InvertedIndex index, Trace trace) {
+            // 先求两边都含有的文档，再对这些文档归并位置
+            DocSet docs = left.candidates(index, null);
+            if (docs.isEmpty()) return docs;
+            docs = right.candidates(index, docs);
+            if (docs.isEmpty()) return docs;
+            PositionalIndex positional = positional(index);
+            PositionalIndex.Positions[] leftCursors = left.cursors(positional);
+            PositionalIndex.Positions[] rightCursors = right.cursors(positional);
+            PostingList.Builder matches = new PostingList.Builder();
+            for (int docId : docs.toArray()) {
+                if (within(left.starts(leftCursors, docId), right.starts(rightCursors, docId))) matches.add(docId);
+            }
+            return matches.build(index.docCount());
+        }
+
+        // 两个升序位置数组中是否有一对相差不超过distance
+        private boolean within(int[] a, int[] b) {
+            int i = 0, j = 0;
+            while (i < a.length && j < b.length) {
+                if (Math.abs(a[i] - b[j]) <= distance) return true;
+                if (a[i] < b[j]) i++;
+                else j++;
+            }
+            return false;
+        }
+
+        @Override
+        String label() {
+            return "NEAR/" + distance + " " + left.label() + " " + right.label();
+        }
+
+        @Override
+        String canonical() {
+            String a = left.canonical(), b = right.canonical();
+            return "NEAR/" + distance + "(" + (a.compareTo(b) <= 0 ? a + "," + b : b + "," + a) + ")";
+        }
+    }
+
+    /**
+     * 补集：只在不能并入AND时出现（例如单独的 NOT x 或 OR 下的 NOT x）
+     */
+    static class Not extends Node {
+        final Node child;
+
+        Not(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        void estimate(InvertedIndex index) {
+            child.estimate(index);
+            estimatedSize = index.docCount() - child.estimatedSize;
+            estimatedCost = child.estimatedCost + index.docCount();
+        }
+
+        @Override
+        DocSet evaluate(InvertedIndex index, Trace trace) {
+            return index.allDocs().andNot(child.execute(index, trace));
+        }
+
+        @Override
+        String label() {
+            return "NOT";
+        }
+
+        @Override
+        List<Node> children() {
+            return Collections.singletonList(child);
+        }
+    }
+
+    /**
+     * 多元运算，加入同类子结点时展开
+     */
+    abstract static class Group extends Node {
+        final List<Node> operands = new ArrayList<>();
+
+        void add(Node node) {
+            if (node.getClass() == getClass()) {
+                operands.addAll(((Group) node).operands);
+            } else {
+                operands.add(node);
+            }
+        }
+
+        @Override
+        List<Node> children() {
+            return operands;
+        }
+    }
+
+    /**
+     * 多元交集：正操作数按估计大小升序求交，NOT操作数改为集合差
+     */
+    static class And extends Group {
+        final List<Node> excluded = new ArrayList<>();  // NOT x 改写成的 MINUS x
+
+        @Override
+        void add(Node node) {
+            if (node instanceof Not) {
+                excluded.add(new Minus(((Not) node).child));
+            } else if (node instanceof And) {
+                operands.addAll(((And) node).operands);
+                excluded.addAll(((And) node).excluded);
+            } else {
+                operands.add(node);
+            }
+        }
+
+        @Override
+        void estimate(InvertedIndex index) {
+            for (Node node : operands) node.estimate(index);
+            for (Node node : excluded) node.estimate(index);
+            operands.sort(Comparator.comparingInt(node -> node.estimatedSize));
+            excluded.sort(Comparator.comparingInt((Node node) -> node.estimatedSize).reversed());
+
+            // 交集不超过最小的操作数；每一步的代价约为两个输入之和
+            int size = operands.isEmpty() ? index.docCount() : operands.get(0).estimatedSize;
+            long cost = 0;
+            for (Node node : operands) {
+                cost += node.estimatedCost + Math.min(size, node.estimatedSize);
+            }
+            for (Node node : excluded) {
+                cost += node.estimatedCost + size;
+            }
+            estimatedSize = size;
+            estimatedCost = cost;
+        }
+
+        @Override
+        DocSet evaluate(InvertedIndex index, Trace trace) {
+            DocSet result = null;
+            for (Node node : operands) {
+                if (result == null) {
+                    result = node.execute(index, trace);
+                } else if (node instanceof Term) {
+                    // 与单个词项求交时交给索引，磁盘上的索引可以按跳表只解码用得到的块；此时记录的是交集的大小
+                    long start = System.nanoTime();
+                    result = index.postingsAnd(((Term) node).term, result);
+                    if (trace != null) trace.recordFiltered(node, result.size(), System.nanoTime() - start);
+                } else {
+                    result = result.and(node.execute(index, trace));
+                }
+                if (result.isEmpty()) return result;  // 空集与任何集合的交都是空集
+            }
+            if (result == null) result = index.allDocs();
+            for (Node node : excluded) {
+                result = result.andNot(node.execute(index, trace));
+                if (result.isEmpty()) return result;
+            }
+            return result;
+        }
+
+        @Override
+        String label() {
+            return "AND";
+        }
+
+        @Override
+        List<Node> children() {
+            List<Node> children = new ArrayList<>(operands);
+            children.addAll(excluded);
+            return children;
+        }
+    }
+
+    /**
+     * AND下的 NOT x：从交集中减去x，不求补集
+     */
+    static class Minus extends Node {
+        final Node child;
+
+        Minus(Node child) {
+            this.child = child;
+        }
+
+        @Override
+        void estimate(InvertedIndex index) {
+            child.estimate(index);
+            estimatedSize = child.estimatedSize;
+            estimatedCost = child.estimatedCost;
+        }
+
+        @Override
+        DocSet evaluate(InvertedIndex index, Trace trace) {
+            return child.execute(index, trace);
+        }
+
+        @Override
+        String label() {
+            return "MINUS";
+        }
+
+        @Override
+        List<Node> children() {
+            return Collections.singletonList(child);
+        }
+    }
+
+    /**
+     * 多元并集
+     */
+    static class Or extends Group {
+        @Override
+        void estimate(InvertedIndex index) {
+            long size = 0;
+            long cost = 0;
+            for (Node node : operands) {
+                node.estimate(index);
+                size += node.estimatedSize;
+                cost += node.estimatedCost + node.estimatedSize;
+            }
+            operands.sort(Comparator.comparingInt(node -> node.estimatedSize));
+            estimatedSize = (int) Math.min(size, index.docCount());
+            estimatedCost = cost;
+        }
+
+        @Override
+        DocSet evaluate(InvertedIndex index, Trace trace) {
+            DocSet result = PostingList.EMPTY;
+            for (Node node : operands) {
+                result = result.or(node.execute(index, trace));
+            }
+            return result;
+        }
+
+        @Override
+        String label() {
+            return "OR";
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * 布尔查询服务：行协议的TCP服务器
+ * 每个连接一个任务，一行一个查询，返回一行结果：
+ *   OK<TAB>文档数<TAB>文件名,文件名,...    或    ERR<TAB>错误信息    或    BUSY（等待超时）
+ * 另有两个命令：STATS 返回延迟统计，QUIT 关闭连接。
+ * 所有连接共享查询缓存，每个查询取当时的只读索引快照；同时求值的查询数由信号量限制，超出的等待，等太久返回BUSY。
+ * 运行在JDK 21及以上时用虚拟线程处理连接，连接数不设上限；否则退回固定大小的线程池。
+ * 退回线程池时每个连接在其存续期间占用一个线程，所以同时打开的连接数限制为线程池的大小：
+ * 超出时直接回复一行BUSY并关闭连接，而不是排在线程池的队列里无限等待。
+ * 用法：java QueryServer [端口] [最大并发查询数] [查询缓存MB]
+ */
+public class QueryServer implements Closeable {
+    private static final int REJECT_DRAIN_MILLIS = 50;
+
+    private final Supplier<? extends InvertedIndex> index;
+    private final QueryCache cache;
+    private final Semaphore inFlight;
+    private final Semaphore connections;  // 连接数上限，只在退回线程池时使用，否则为null
+    private final long queueTimeoutMillis;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram queueWait = new LatencyHistogram();
+    private volatile boolean running = true;
+
+    /**
+     * @param index 提供当前索引快照
+     * @param cache 共享的查询缓存
+     * @param port 监听端口，0表示任选一个空闲端口
+     * @param maxInFlight 同时求值的查询数上限
+     * @param queueTimeoutMillis 等待求值名额的最长时间
+     */
+    public QueryServer(Supplier<? extends InvertedIndex> index, QueryCache cache, int port, int maxInFlight,
+                       long queueTimeoutMillis) throws IOException {
+        this.index = index;
+        this.cache = cache;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.serverSocket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        int maxConnections = Math.max(64, maxInFlight * 4);
+        this.executor = newExecutor(maxConnections);
+        // 虚拟线程的执行器不是ThreadPoolExecutor
+        this.connections = executor instanceof ThreadPoolExecutor ? new Semaphore(maxConnections) : null;
+    }
+
+    /**
+     * 有虚拟线程时每个任务一个虚拟线程；没有时（JDK 21以前）用固定大小的线程池
+     */
+    static ExecutorService newExecutor(int fallbackThreads) {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return Executors.newFixedThreadPool(fallbackThreads);
+        }
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * 接受连接直到close()被调用，在调用线程上运行
+     */
+    public void serve() throws IOException {
+        while (running) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                if (!running) return;  // close()关闭了监听套接字
+                throw e;
+            }
+            if (connections != null && !connections.tryAcquire()) {
+                reject(socket);
+                continue;
+            }
+            try {
+                executor.execute(() -> {
+                    try {
+                        handle(socket);
+                    } finally {
+                        if (connections != null) connections.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                if (connections != null) connections.release();
+                reject(socket);
+            }
+        }
+    }
+
+    // 连接数已满：回复BUSY后关闭
+    // 关闭时接收缓冲区里还有未读的数据（客户端已发出的查询）会发RST，客户端可能收不到BUSY；
+    // 所以先关闭输出，再读掉客户端发来的数据，直到它关闭连接或等满REJECT_DRAIN_MILLIS
+    private static void reject(Socket socket) {
+        try (Socket s = socket) {
+            s.getOutputStream().write("BUSY\n".getBytes(StandardCharsets.UTF_8));
+            s.shutdownOutput();
+            s.setSoTimeout(REJECT_DRAIN_MILLIS);
+            InputStream in = s.getInputStream();
+            byte[] buf = new byte[512];
+            while (in.read(buf) >= 0) {
+                // 丢弃
+            }
+        } catch (IOException e) {
+            // 客户端已断开，或等待超时
+        }
+    }
+
+    // 处理一个连接上的所有查询
+    private void handle(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             Writer out = new BufferedWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8))) {
+            s.setTcpNoDelay(true);
+            String line;
+            while ((line = in.readLine()) != null) {
+                String query = line.trim();
+                if (query.equalsIgnoreCase("QUIT")) break;
+                if (query.equalsIgnoreCase("STATS")) {
+                    out.write("OK\t" + stats() + "\n");
+                } else {
+                    out.write(answer(query));
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            // 客户端断开，丢弃这个连接
+        }
+    }
+
+    // 等待求值名额，求值，格式化结果
+    private String answer(String query) {
+        long start = System.nanoTime();
+        try {
+            if (!inFlight.tryAcquire(queueTimeoutMillis, TimeUnit.MILLISECONDS)) return "BUSY\n";
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "BUSY\n";
+        }
+        queueWait.record(System.nanoTime() - start);
+        try {
+            InvertedIndex snapshot = index.get();
+            DocSet result = cache.search(query, snapshot);
+            StringBuilder sb = new StringBuilder("OK\t").append(result.size()).append('\t');
+            int[] ids = result.toArray();
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(snapshot.docName(ids[i]));
+            }
+            return sb.append('\n').toString();
+        } catch (RuntimeException e) {
+            // 表达式不合法（括号不配对、缺操作数等）
+            return "ERR\t" + e + "\n";
+        } finally {
+            inFlight.release();
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 延迟统计：从收到查询到结果生成（含排队），以及其中等待求值名额的时间
+     */
+    public String stats() {
+        return "latency " + latency + "; queue " + queueWait + "; " + cache;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = args.length >= 1 ? Integer.parseInt(args[0]) : 7070;
+        int maxInFlight = args.length >= 2 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors() * 2;
+        long cacheBytes = (args.length >= 3 ? Long.parseLong(args[2]) : 16) << 20;
+        LiveIndex index = Main.openIndex(64L << 20);
+        QueryServer server = new QueryServer(index::snapshot, new QueryCache(cacheBytes), port, maxInFlight, 1000);
+        // 每5秒扫描一次文档目录，增量更新索引
+        ScheduledExecutorService syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "index-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(() -> {
+            // 任务抛出异常会取消之后的所有执行，所以运行时异常也在这里接住，下一轮照常扫描
+            try {
+                index.sync();
+            } catch (IOException | RuntimeException e) {
+                System.err.println("索引更新失败，继续使用当前快照：" + e);
+            }
+        }, 5, 5, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> System.out.println(server.stats())));
+        System.out.println("查询服务已启动，端口 " + server.port() + "，最大并发查询数 " + maxInFlight);
+        server.serve();
+    }
+}
@@ -0,0 +1,361 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 磁盘上不可变的索引段
+ * 文件格式：
+ *   [MAGIC, 4B] [文档数n, 4B] [词典起始位置, 8B] [n个 [文件名, UTF] [建索引时文件的修改时间, 8B]]
+ *   [倒排记录区：每个词项的编号，按BlockPostings分块压缩]
+ *   [词典：词项数, 4B；按词项升序逐个 [词项, UTF] [df, 4B] [记录表起始位置, 8B] [记录表字节数, 4B]]
+ * 位置文件（段文件名加 .pos）与段文件按同样的词项顺序存放各词项的位置：
+ *   [POS_MAGIC, 4B] [位置表起始位置, 8B]
+ *   [位置区：每个词项按文档编号顺序，每篇文档 [字节数, VByte] [位置差值, VByte...]]
+ *   [位置表：词项数, 4B；逐个 [起始位置, 8B] [字节数, 4B]]
+ * 打开时只把文件名和词典读进内存，倒排记录表在查询时按位置读出并解码。
+ * 与一个小集合求交集时用跳表前进，长记录表只解码可能命中的块。
+ */
+class SegmentIndex implements PositionalIndex, Closeable {
+    static final int MAGIC = 0x53454733;  // "SEG3"
+    static final int POS_MAGIC = 0x504F5331;  // "POS1"
+
+    private final FileChannel channel;
+    private final FileChannel positionChannel;
+    private final long[] positionOffsets;
+    private final int[] positionLengths;
+    private final String[] docNames;
+    private final long[] docTimes;
+    private final String[] terms;   // 升序，二分查找
+    private final int[] docFreqs;
+    private final long[] offsets;
+    private final int[] lengths;
+    private final long version;  // 段文件的修改时间，重建后变化
+
+    private SegmentIndex(FileChannel channel, String[] docNames, long[] docTimes, String[] terms,
+                         int[] docFreqs, long[] offsets, int[] lengths, long version,
+                         FileChannel positionChannel, long[] positionOffsets, int[] positionLengths) {
+        this.channel = channel;
+        this.positionChannel = positionChannel;
+        this.positionOffsets = positionOffsets;
+        this.positionLengths = positionLengths;
+        this.docNames = docNames;
+        this.docTimes = docTimes;
+        this.terms = terms;
+        this.docFreqs = docFreqs;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.version = version;
+    }
+
+    /**
+     * 位置文件的路径
+     */
+    static Path positionsPath(Path segment) {
+        return segment.resolveSibling(segment.getFileName() + ".pos");
+    }
+
+    /**
+     * 打开一个段文件及其位置文件
+     */
+    public static SegmentIndex open(Path segment) throws IOException {
+        FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ);
+        FileChannel positionChannel = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new ChannelInput(channel, 0), 1 << 16));
+            if (in.readInt() != MAGIC) throw new IOException("不是索引段文件：" + segment);
+            String[] docNames = new String[in.readInt()];
+            long[] docTimes = new long[docNames.length];
+            long dictOffset = in.readLong();
+            for (int i = 0; i < docNames.length; i++) {
+                docNames[i] = in.readUTF();
+                docTimes[i] = in.readLong();
+            }
+
+            in = new DataInputStream(new BufferedInputStream(new ChannelInput(channel, dictOffset), 1 << 16));
+            int termCount = in.readInt();
+            String[] terms = new String[termCount];
+            int[] docFreqs = new int[termCount];
+            long[] offsets = new long[termCount];
+            int[] lengths = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                terms[i] = in.readUTF();
+                docFreqs[i] = in.readInt();
+                offsets[i] = in.readLong();
+                lengths[i] = in.readInt();
+            }
+
+            positionChannel = FileChannel.open(positionsPath(segment), StandardOpenOption.READ);
+            in = new DataInputStream(new BufferedInputStream(new ChannelInput(positionChannel, 0), 1 << 16));
+            if (in.readInt() != POS_MAGIC) throw new IOException("不是位置文件：" + positionsPath(segment));
+            long tableOffset = in.readLong();
+            in = new DataInputStream(new BufferedInputStream(new ChannelInput(positionChannel, tableOffset), 1 << 16));
+            if (in.readInt() != termCount) throw new IOException("位置文件与段文件不匹配：" + segment);
+            long[] positionOffsets = new long[termCount];
+            int[] positionLengths = new int[termCount];
+            for (int i = 0; i < termCount; i++) {
+                positionOffsets[i] = in.readLong();
+                positionLengths[i] = in.readInt();
+            }
+            return new SegmentIndex(channel, docNames, docTimes, terms, docFreqs, offsets, lengths,
+                    Files.getLastModifiedTime(segment).toMillis(),
+                    positionChannel, positionOffsets, positionLengths);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            if (positionChannel != null) positionChannel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int docCount() {
+        return docNames.length;
+    }
+
+    /**
+     * 建索引时该文档的文件修改时间，增量更新据此判断文件是否变化
+     */
+    public long docTime(int docId) {
+        return docTimes[docId];
+    }
+
+    /**
+     * 升序的全部词项，调用方不得修改
+     */
+    String[] terms() {
+        return terms;
+    }
+
+    /**
+     * 词项的文档编号，不存在时返回空数组
+     */
+    int[] ids(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        return i < 0 ? new int[0] : BlockPostings.decode(read(i));
+    }
+
+    @Override
+    public long version() {
+        return version;
+    }
+
+    @Override
+    public String docName(int docId) {
+        return docNames[docId];
+    }
+
+    @Override
+    public DocSet postings(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        if (i < 0) return PostingList.EMPTY;
+        int[] ids = BlockPostings.decode(read(i));
+        return DocSet.isDense(ids.length, docNames.length)
+                ? DocBitmap.of(ids, ids.length, docNames.length) : new PostingList(ids, ids.length);
+    }
+
+    @Override
+    public int docFreq(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        return i < 0 ? 0 : docFreqs[i];
+    }
+
+    @Override
+    public DocSet postingsAnd(String term, DocSet filter) {
+        int i = Arrays.binarySearch(terms, term);
+        if (i < 0 || filter.isEmpty()) return PostingList.EMPTY;
+        // filter远小于记录表时逐个前进游标，否则整表解码后求交集
+        if ((long) filter.size() * 8 < docFreqs[i]) {
+            int[] ids = filter.toArray();
+            return new BlockPostings.Cursor(read(i)).intersect(ids, ids.length);
+        }
+        return postings(term).and(filter);
+    }
+
+    @Override
+    public Positions positions(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        if (i < 0) return docId -> null;
+        return cursor(i);
+    }
+
+    // 第i个词项的位置游标
+    PositionCursor cursor(int i) {
+        int[] ids = BlockPostings.decode(read(i));
+        return new PositionCursor(ids, read(positionChannel, positionOffsets[i], positionLengths[i]));
+    }
+
+    /**
+     * 词项的位置游标，不存在时返回null
+     */
+    PositionCursor cursor(String term) {
+        int i = Arrays.binarySearch(terms, term);
+        return i < 0 ? null : cursor(i);
+    }
+
+    // 读出第i个词项的记录表字节
+    private ByteBuffer read(int i) {
+        return read(channel, offsets[i], lengths[i]);
+    }
+
+    private static ByteBuffer read(FileChannel channel, long offset, int length) {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        try {
+            // 按位置读，不改变通道的当前位置，多个线程可以同时读
+            long pos = offset;
+            while (buf.hasRemaining()) {
+                int n = channel.read(buf, pos);
+                if (n < 0) throw new EOFException();
+                pos += n;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buf.flip();
+        return buf;
+    }
+
+    public int termCount() {
+        return terms.length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+        positionChannel.close();
+    }
+
+    // 从通道的指定位置开始读的输入流，不改变通道的当前位置
+    private static class ChannelInput extends InputStream {
+        private final FileChannel channel;
+        private long pos;
+
+        ChannelInput(FileChannel channel, long pos) {
+            this.channel = channel;
+            this.pos = pos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = channel.read(ByteBuffer.wrap(b, off, len), pos);
+            if (n > 0) pos += n;
+            return n;
+        }
+    }
+
+    /**
+     * 段文件写入器：词项须按升序加入，同时写出位置文件
+     * 全部加入后调用commit()才会替换段文件；未commit就close()时丢弃临时文件，原有的段文件不变。
+     */
+    static class Writer implements Closeable {
+        private final Path target;
+        private final Path tmp;
+        private final Path positionsTmp;
+        private final DataOutputStream out;
+        private final DataOutputStream positionsOut;
+        private final ByteArrayOutputStream positionTableBytes = new ByteArrayOutputStream();
+        private final DataOutputStream positionTable = new DataOutputStream(positionTableBytes);
+        private long positionsPosition;
+        private long position;  // 已写出的字节数
+        private final ByteArrayOutputStream dictBytes = new ByteArrayOutputStream();
+        private final DataOutputStream dict = new DataOutputStream(dictBytes);
+        private int termCount;
+        private String lastTerm;
+        private boolean committed;
+
+        /**
+         * @param docNames 文档编号对应的文件名
+         * @param docTimes 建索引时各文件的修改时间
+         */
+        Writer(Path target, String[] docNames, long[] docTimes) throws IOException {
+            this.target = target;
+            this.tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(docNames.length);
+            out.writeLong(0);  // 词典起始位置，写完后回填
+            for (int i = 0; i < docNames.length; i++) {
+                out.writeUTF(docNames[i]);
+                out.writeLong(docTimes[i]);
+            }
+            position = out.size();
+
+            this.positionsTmp = positionsPath(target).resolveSibling(positionsPath(target).getFileName() + ".tmp");
+            this.positionsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(positionsTmp), 1 << 16));
+            positionsOut.writeInt(POS_MAGIC);
+            positionsOut.writeLong(0);  // 位置表起始位置，写完后回填
+            positionsPosition = 12;
+        }
+
+        /**
+         * @param positions 按文档编号顺序排列的各文档位置，格式见SpimiIndexer.writePositions
+         */
+        void add(String term, PostingList list, byte[] positions) throws IOException {
+            if (lastTerm != null && lastTerm.compareTo(term) >= 0) {
+                throw new IllegalArgumentException("词项须按升序加入：" + term);
+            }
+            lastTerm = term;
+            byte[] encoded = BlockPostings.encode(list.toArray(), list.size());
+            out.write(encoded);
+            int length = encoded.length;
+            dict.writeUTF(term);
+            dict.writeInt(list.size());
+            dict.writeLong(position);
+            dict.writeInt(length);
+            position += length;
+            termCount++;
+
+            positionsOut.write(positions);
+            positionTable.writeLong(positionsPosition);
+            positionTable.writeInt(positions.length);
+            positionsPosition += positions.length;
+        }
+
+        // 写出词典和位置表，回填它们的起始位置，再把临时文件改名；段文件最后改名，它存在即表示两个文件都完整
+        void commit() throws IOException {
+            out.writeInt(termCount);
+            dictBytes.writeTo(out);
+            out.close();
+            patchLong(tmp, 8, position);
+
+            positionsOut.writeInt(termCount);
+            positionTableBytes.writeTo(positionsOut);
+            positionsOut.close();
+            patchLong(positionsTmp, 4, positionsPosition);
+
+            Files.move(positionsTmp, positionsPath(target), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            committed = true;
+        }
+
+        // 未commit（写入中途出错）时删除临时文件，不替换已有的段文件
+        @Override
+        public void close() throws IOException {
+            if (committed) return;
+            try {
+                out.close();
+            } finally {
+                try {
+                    positionsOut.close();
+                } finally {
+                    Files.deleteIfExists(tmp);
+                    Files.deleteIfExists(positionsTmp);
+                }
+            }
+        }
+
+        private static void patchLong(Path path, long offset, long value) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.allocate(8).putLong(value);
+                buf.flip();
+                channel.write(buf, offset);
+            }
+        }
+    }
+}
@@ -0,0 +1,168 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * 单遍内存索引（SPIMI）
+ * 文档按编号递增的顺序加入，词项直接追加到内存中的倒排记录表，词项在文档中的位置另存一份；估算的内存占用超过预算时，
+ * 把当前的表按词项排序、压缩后写成一个有序的临时文件（run），清空内存继续。
+ * 最后对所有run做k路归并，写成一个不可变的段文件和位置文件（格式见SegmentIndex）。
+ * 位置按文档编号的顺序编码，各run的位置字节归并时直接拼接，不需要重新编码。
+ * 能索引的语料大小只受磁盘限制，与堆大小无关。
+ */
+class SpimiIndexer {
+    private final Path workDir;
+    private final long memoryBudget;  // 内存中倒排记录表的估算字节数上限
+    private final List<Path> runs = new ArrayList<>();
+    private Map<String, PostingList.Builder> builders = new HashMap<>();
+    private Map<String, ByteArrayOutputStream> positions = new HashMap<>();
+    private long usedBytes;
+
+    /**
+     * @param workDir 存放临时run文件的目录
+     * @param memoryBudget 内存预算（字节）
+     */
+    public SpimiIndexer(Path workDir, long memoryBudget) {
+        this.workDir = workDir;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * 加入一篇文档的词项，docId须大于之前加入的所有文档
+     * @param termPositions 词项 -> 它在文档中出现的位置（升序）
+     */
+    public void addDocument(int docId, Map<String, List<Integer>> termPositions) throws IOException {
+        for (Map.Entry<String, List<Integer>> entry : termPositions.entrySet()) {
+            String term = entry.getKey();
+            PostingList.Builder builder = builders.get(term);
+            if (builder == null) {
+                builder = new PostingList.Builder();
+                builders.put(term, builder);
+                positions.put(term, new ByteArrayOutputStream());
+                // 新词项：字符串、两个HashMap结点、构建器和位置缓冲区的大致开销
+                usedBytes += 300 + 2L * term.length();
+            }
+            builder.add(docId);
+            usedBytes += 4 + writePositions(positions.get(term), entry.getValue());
+        }
+        if (usedBytes >= memoryBudget) {
+            spill();
+        }
+    }
+
+    /**
+     * 写出一篇文档中一个词项的位置：[字节数, VByte] [位置差值, VByte...]，字节数用于跳过不需要的文档
+     * @return 写出的字节数
+     */
+    static int writePositions(ByteArrayOutputStream out, List<Integer> list) {
+        ByteArrayOutputStream deltas = new ByteArrayOutputStream(list.size() + 4);
+        try {
+            DataOutputStream data = new DataOutputStream(deltas);
+            int prev = 0;
+            for (int p : list) {
+                VByte.write(data, p - prev);
+                prev = p;
+            }
+            int before = out.size();
+            VByte.write(new DataOutputStream(out), deltas.size());
+            deltas.writeTo(out);
+            return out.size() - before;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);  // 写内存不会失败
+        }
+    }
+
+    // 把内存中的表按词项排序写成一个run：[词项数, 4B] 再逐个 [词项, UTF] [df, VByte] [编号差值, VByte...] [位置字节数, VByte] [位置...]
+    private void spill() throws IOException {
+        if (builders.isEmpty()) return;
+        Files.createDirectories(workDir);
+        Path run = workDir.resolve("run-" + runs.size() + ".tmp");
+        List<String> terms = new ArrayList<>(builders.keySet());
+        Collections.sort(terms);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            out.writeInt(terms.size());
+            for (String term : terms) {
+                PostingList list = builders.get(term).build();
+                out.writeUTF(term);
+                VByte.write(out, list.size());
+                VByte.writeDeltas(out, list.toArray(), list.size());
+                ByteArrayOutputStream bytes = positions.get(term);
+                VByte.write(out, bytes.size());
+                bytes.writeTo(out);
+            }
+        }
+        runs.add(run);
+        builders = new HashMap<>();
+        positions = new HashMap<>();
+        usedBytes = 0;
+    }
+
+    /**
+     * 写出剩余的表，归并所有run，生成段文件和位置文件，并删除临时文件
+     * @param docNames 文档编号对应的文件名
+     * @param docTimes 各文件的修改时间
+     * @param segment 段文件路径
+     */
+    public void finish(String[] docNames, long[] docTimes, Path segment) throws IOException {
+        spill();
+        // 每个run一个读取器，按当前词项放进小顶堆；词项相同时按run的顺序，保证编号递增
+        PriorityQueue<RunReader> heap = new PriorityQueue<>(
+                Comparator.comparing((RunReader r) -> r.term).thenComparingInt(r -> r.index));
+        try (SegmentIndex.Writer writer = new SegmentIndex.Writer(segment, docNames, docTimes)) {
+            for (int i = 0; i < runs.size(); i++) {
+                RunReader reader = new RunReader(runs.get(i), i);
+                if (reader.next()) heap.add(reader);
+                else reader.close();
+            }
+            while (!heap.isEmpty()) {
+                String term = heap.peek().term;
+                PostingList.Builder merged = new PostingList.Builder();
+                ByteArrayOutputStream mergedPositions = new ByteArrayOutputStream();
+                while (!heap.isEmpty() && heap.peek().term.equals(term)) {
+                    RunReader reader = heap.poll();
+                    for (int id : reader.ids) merged.add(id);
+                    mergedPositions.write(reader.positions);
+                    if (reader.next()) heap.add(reader);
+                    else reader.close();
+                }
+                writer.add(term, merged.build(), mergedPositions.toByteArray());
+            }
+            writer.commit();
+        } finally {
+            for (RunReader reader : heap) reader.close();
+            for (Path run : runs) Files.deleteIfExists(run);
+            runs.clear();
+        }
+    }
+
+    // 顺序读取一个run
+    private static class RunReader implements Closeable {
+        final int index;
+        private final DataInputStream in;
+        private int remaining;
+        String term;
+        int[] ids;
+        byte[] positions;
+
+        RunReader(Path run, int index) throws IOException {
+            this.index = index;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+            this.remaining = in.readInt();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0) return false;
+            remaining--;
+            term = in.readUTF();
+            ids = VByte.readDeltas(in, VByte.read(in));
+            positions = new byte[VByte.read(in)];
+            in.readFully(positions);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
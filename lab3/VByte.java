@@ -0,0 +1,68 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+
+/**
+ * 变长字节编码（Variable Byte）
+ * 每字节低7位存数据，最高位为1表示后面还有字节。升序的文档编号先求差再编码，小间隔只占1字节。
+ */
+class VByte {
+    static void write(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    static int read(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    static int read(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    /**
+     * 写入升序编号的差值序列（第一个编号与0求差）
+     */
+    static void writeDeltas(DataOutput out, int[] ids, int size) throws IOException {
+        int prev = 0;
+        for (int i = 0; i < size; i++) {
+            write(out, ids[i] - prev);
+            prev = ids[i];
+        }
+    }
+
+    /**
+     * 读出count个差值并还原为升序编号
+     */
+    static int[] readDeltas(DataInput in, int count) throws IOException {
+        int[] ids = new int[count];
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            prev += read(in);
+            ids[i] = prev;
+        }
+        return ids;
+    }
+
+    static int[] readDeltas(ByteBuffer in, int count) {
+        int[] ids = new int[count];
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            prev += read(in);
+            ids[i] = prev;
+        }
+        return ids;
+    }
+}
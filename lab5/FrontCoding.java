@@ -1,89 +1,177 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 
 public class FrontCoding {
 
+    // 文件头的魔数：旧格式的第一个字节是k（至少为1），以0开头的文件一定是带文件头的格式
+    static final byte[] MAGIC = {0, 'F', 'C', 'D'};
+    static final int VERSION = 2;  // 新写的文件默认用版本2，版本1仍可读写
+
+    private static final String USAGE = "Usage:\n  encode <inTxt> <outBin> [k] [version]\n  decode <inBin> <outTxt>\n"
+            + "  get <inBin> <ordinal>\n  lookup <inBin> <term>\n  report <inTxt> [k]";
+
     /* CLI */
     public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && "report".equalsIgnoreCase(args[0])) {
+            report(Paths.get(args[1]), (args.length >= 3) ? Integer.parseInt(args[2]) : 16);
+            return;
+        }
         if (args.length < 3) {
-            System.err.println("Usage:\n  encode <inTxt> <outBin> [k]\n  decode <inBin> <outTxt>");
+            System.err.println(USAGE);
             return;
         }
         String mode = args[0];
         if ("encode".equalsIgnoreCase(mode)) {
-            int k = (args.length >= 4) ? Integer.parseInt(args[3]) : 4;
+            int k = (args.length >= 4) ? Integer.parseInt(args[3]) : 16;
+            int version = (args.length >= 5) ? Integer.parseInt(args[4]) : VERSION;
             List<String> terms = readTerms(Paths.get(args[1]));
-            byte[] bytes = compress(terms, k);
+            byte[] bytes = compress(terms, k, version);
             Files.write(Paths.get(args[2]), bytes);
-            System.out.printf("压缩完成：原 %d 个词 压缩到 %d 字节，块大小 k=%d%n",
-                    terms.size(), bytes.length, k);
+            System.out.printf("压缩完成：原 %d 个词 压缩到 %d 字节，块大小 k=%d，版本%d%n",
+                    terms.size(), bytes.length, k, version);
         } else if ("decode".equalsIgnoreCase(mode)) {
             byte[] bytes = Files.readAllBytes(Paths.get(args[1]));
             List<String> terms = decompress(bytes);
             Files.write(Paths.get(args[2]), String.join("\n", terms).getBytes(StandardCharsets.UTF_8));
             System.out.printf("解压完成：恢复 %d 个词%n", terms.size());
+        } else if ("get".equalsIgnoreCase(mode)) {
+            Reader reader = Reader.open(Paths.get(args[1]));
+            System.out.println(reader.get(Integer.parseInt(args[2])));
+        } else if ("lookup".equalsIgnoreCase(mode)) {
+            Reader reader = Reader.open(Paths.get(args[1]));
+            int ordinal = reader.lookup(args[2]);
+            System.out.println(ordinal >= 0 ? "序号 " + ordinal : "不在词典中");
         } else {
-            System.err.println("Usage:\n  encode <inTxt> <outBin> [k]\n  decode <inBin> <outTxt>");
+            System.err.println(USAGE);
         }
     }
 
     /*
-     * 压缩：
-     * 块内结构：[公共前缀的长度, 1B] [词1的长度，1B] [词1, ?B] [词2后缀的长度, 1B] [词2后缀, ?B]
-     *                                              [词3后缀的长度, 1B] [词3后缀, ?B]
-     *                                              [词4后缀的长度, 1B] [词3后缀, ?B]
-     * 文件结构： [k, 1B] [块1] [块2] [块3]... [块n]
+     * 压缩，两种块结构：
+     * 版本1：[公共前缀的长度, 1B] [词1的长度，1B] [词1, ?B] [词2后缀的长度, 1B] [词2后缀, ?B]
+     *                                                [词3后缀的长度, 1B] [词3后缀, ?B]
+     *                                                [词4后缀的长度, 1B] [词4后缀, ?B]
+     *        公共前缀是整个块共用的，各长度只有1字节，词不能超过255字节。
+     * 版本2：[词1的长度, V] [词1, ?B] [与词1的公共前缀长度, V] [词2后缀的长度, V] [词2后缀, ?B]
+     *                                 [与词2的公共前缀长度, V] [词3后缀的长度, V] [词3后缀, ?B] ...
+     *        每个词只存与前一个词不同的部分（增量前端编码），V表示变长整数（每字节低7位，最高位为1表示还有后续字节）。
+     * 长度和公共前缀都按UTF-8字节计。
+     * 文件结构： [0x00 'F' 'C' 'D', 4B] [版本, 1B] [k, 1B] [词数, 4B] [块数, 4B]
+     *            [块偏移表, 块数*4B] [块1] [块2] [块3]... [块n]
+     * 块偏移是块在文件中的起始位置，有了它可以直接定位第i块；
+     * 词须按UTF-8字节序（即码点序）排好，lookup靠这个顺序二分查找。
      */
     public static byte[] compress(List<String> terms, int k) throws IOException {
+        return compress(terms, k, VERSION);
+    }
+
+    public static byte[] compress(List<String> terms, int k, int version) throws IOException {
+        if (k < 1 || k > 255) throw new IllegalArgumentException("块大小须在1~255之间：" + k);
+        if (version != 1 && version != 2) throw new IllegalArgumentException("不支持的版本：" + version);
         // 字节流，以字节数组的形式写入压缩结果
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        // 在文件开头写入块大小 k
-        baos.write(k);
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        int blockCount = (terms.size() + k - 1) / k;
+        int headerSize = MAGIC.length + 2 + 8 + blockCount * 4;
+        int[] offsets = new int[blockCount];
 
         int i = 0;
+        byte[] previous = null;
         while (i < terms.size()) {
+            offsets[i / k] = headerSize + blocks.size();
             // 每个块的实际大小
             int blockSize = Math.min(k, terms.size() - i);
 
-            // 计算块内所有词的公共前缀
-            String firstTerm = terms.get(i);
-            int lcp = firstTerm.length();  // 初始化为第一个词的长度
-
-            // 遍历当前块内所有词，计算公共前缀
-            for (int j = 1; j < blockSize; j++) {
-                lcp = Math.min(lcp, longestCommonPrefix(firstTerm, terms.get(i + j)));
+            byte[][] termBytes = new byte[blockSize][];
+            for (int j = 0; j < blockSize; j++) {
+                termBytes[j] = terms.get(i + j).getBytes(StandardCharsets.UTF_8);  // 编码为字节数组
+                if (version == 1 && termBytes[j].length > 255) {
+                    throw new IllegalArgumentException("版本1的词不能超过255字节：" + terms.get(i + j));
+                }
+                if (previous != null && compare(previous, termBytes[j]) >= 0) {
+                    throw new IllegalArgumentException("词须严格升序：" + terms.get(i + j));
+                }
+                previous = termBytes[j];
             }
+            if (version == 1) writeBlockV1(blocks, termBytes);
+            else writeBlockV2(blocks, termBytes);
+
+            // 更新索引
+            i += blockSize;
+        }
 
-            // 写入公共前缀的长度，只写一次
-            baos.write(lcp);    // 注，int会被自动转为byte
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(headerSize + blocks.size());
+        DataOutputStream out = new DataOutputStream(baos);
+        out.write(MAGIC);
+        out.writeByte(version);
+        out.writeByte(k);
+        out.writeInt(terms.size());
+        out.writeInt(blockCount);
+        for (int offset : offsets) out.writeInt(offset);
+        blocks.writeTo(out);
+        out.flush();
+        return baos.toByteArray();
+    }
 
-            // 写入第一个词的内容（完整存储）
-            byte[] firstBytes = terms.get(i).getBytes(StandardCharsets.UTF_8);  // 编码为字节数组
-            baos.write(firstBytes.length);  // 写入第一个词的长度
-            baos.write(firstBytes);         // 写入第一个词
+    // 版本1的块：块内共用一个公共前缀
+    private static void writeBlockV1(ByteArrayOutputStream blocks, byte[][] termBytes) {
+        // 计算块内所有词的公共前缀
+        byte[] firstBytes = termBytes[0];
+        int lcp = firstBytes.length;  // 初始化为第一个词的长度
+        for (int j = 1; j < termBytes.length; j++) {
+            lcp = Math.min(lcp, longestCommonPrefix(firstBytes, termBytes[j]));
+        }
 
-            // 写入块内其他词的后缀部分
-            for (int j = 1; j < blockSize; j++) {
-                String term = terms.get(i + j);
-                // 获取当前词的后缀部分（从公共前缀之后的部分）
-                String suffix = term.substring(lcp);
-                byte[] suffixBytes = suffix.getBytes(StandardCharsets.UTF_8);
+        // 写入公共前缀的长度，只写一次
+        blocks.write(lcp);    // 注，int会被自动转为byte
 
-                // 只写公共前缀的长度一次，然后写每个词的后缀部分
-                baos.write(suffixBytes.length); // 后缀部分的长度
-                baos.write(suffixBytes);         // 后缀内容
-            }
+        // 写入第一个词的内容（完整存储）
+        blocks.write(firstBytes.length);  // 写入第一个词的长度
+        blocks.write(firstBytes, 0, firstBytes.length);  // 写入第一个词
 
-            // 更新索引
-            i += blockSize;
+        // 写入块内其他词的后缀部分（从公共前缀之后的部分）
+        for (int j = 1; j < termBytes.length; j++) {
+            blocks.write(termBytes[j].length - lcp);                    // 后缀部分的长度
+            blocks.write(termBytes[j], lcp, termBytes[j].length - lcp);  // 后缀内容
         }
-        return baos.toByteArray();
     }
 
-    /* 解压 */
+    // 版本2的块：第一个词完整存储，之后每个词存与前一个词的公共前缀长度和其余部分
+    private static void writeBlockV2(ByteArrayOutputStream blocks, byte[][] termBytes) {
+        writeVarint(blocks, termBytes[0].length);
+        blocks.write(termBytes[0], 0, termBytes[0].length);
+        for (int j = 1; j < termBytes.length; j++) {
+            int lcp = longestCommonPrefix(termBytes[j - 1], termBytes[j]);
+            writeVarint(blocks, lcp);
+            writeVarint(blocks, termBytes[j].length - lcp);
+            blocks.write(termBytes[j], lcp, termBytes[j].length - lcp);
+        }
+    }
+
+    /* 解压：带文件头的格式（版本1、2）逐块解码；旧格式（文件头就是k）也能读 */
     public static List<String> decompress(byte[] data) throws IOException {
+        if (data.length > 0 && data[0] == 0) {
+            Reader reader = new Reader(ByteBuffer.wrap(data));
+            List<String> result = new ArrayList<>(reader.size());
+            for (int b = 0; b < reader.blockCount; b++) {
+                Reader.BlockCursor cursor = reader.new BlockCursor(b);
+                result.add(cursor.term());
+                while (cursor.hasNext()) result.add(cursor.next().term());
+            }
+            return result;
+        }
+        return decompressLegacy(data);
+    }
+
+    /*
+     * 旧格式：[k, 1B] [块1] [块2]...，块结构同版本1，但公共前缀长度按字符计，也没有词数。
+     * 除最后一块外每块都恰有k个词，最后一块读到文件末尾为止。
+     */
+    private static List<String> decompressLegacy(byte[] data) throws IOException {
         List<String> result = new ArrayList<>();
         DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
 
@@ -91,23 +179,20 @@ public class FrontCoding {
         int k = in.readUnsignedByte();  // 读取块大小
 
         while (in.available() > 0) {
-            // 2. 读取每个块的大小，块大小为 k 或最后一个块的剩余大小
-            int blockSize = Math.min(k, in.available());  // 读取当前块的实际大小
-
-            // 3. 读取公共前缀长度
+            // 2. 读取公共前缀长度
             int lcp = in.readUnsignedByte();  // 读取公共前缀长度
 
-            // 4. 读取第一个词的长度
+            // 3. 读取第一个词的长度
             int firstLen = in.readUnsignedByte();  // 读取第一个词的长度
 
-            // 5. 读取第一个词
+            // 4. 读取第一个词
             byte[] firstBytes = new byte[firstLen];
             in.readFully(firstBytes);  // 读取第一个词
             String first = new String(firstBytes, StandardCharsets.UTF_8);
             result.add(first);  // 添加第一个词到结果列表
 
-            // 6. 按照块大小继续读取后续词的后缀部分
-            for (int j = 1; j < blockSize; j++) {
+            // 5. 继续读取后续词的后缀部分，至多k-1个，最后一块在文件末尾提前结束
+            for (int j = 1; j < k && in.available() > 0; j++) {
                 // 读取后缀部分的长度
                 int sufLen = in.readUnsignedByte();
 
@@ -125,6 +210,218 @@ public class FrontCoding {
         return result;
     }
 
+    /**
+     * 在压缩文件上直接随机访问，不把整个词表解到堆上：
+     * 按序号取词只解码一个块；按词查序号先对各块的第一个词二分，再解码一个块。
+     * 文件通过内存映射读入，块偏移表也直接从映射的缓冲区读。版本1、2都支持。
+     */
+    static class Reader {
+        private final ByteBuffer buf;
+        private final int version;
+        private final int k;
+        private final int size;
+        private final int blockCount;
+        private final int offsetTable;  // 块偏移表在文件中的位置
+
+        Reader(ByteBuffer buf) throws IOException {
+            this.buf = buf;
+            for (int i = 0; i < MAGIC.length; i++) {
+                if (buf.limit() <= i || buf.get(i) != MAGIC[i]) throw new IOException("不是前端编码词典文件（缺少文件头）");
+            }
+            version = buf.get(4) & 0xFF;
+            if (version != 1 && version != 2) throw new IOException("不支持的版本：" + version);
+            k = buf.get(5) & 0xFF;
+            size = buf.getInt(6);
+            blockCount = buf.getInt(10);
+            offsetTable = 14;
+        }
+
+        /**
+         * 以只读方式内存映射文件
+         */
+        public static Reader open(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return new Reader(mapped);
+            }
+        }
+
+        /**
+         * @return 词数
+         */
+        public int size() {
+            return size;
+        }
+
+        public int version() {
+            return version;
+        }
+
+        /**
+         * @param ordinal 词的序号，从0计
+         * @return 第ordinal个词
+         */
+        public String get(int ordinal) {
+            if (ordinal < 0 || ordinal >= size) throw new IndexOutOfBoundsException("序号越界：" + ordinal);
+            BlockCursor cursor = new BlockCursor(ordinal / k);
+            for (int j = ordinal % k; j > 0; j--) cursor.next();
+            return cursor.term();
+        }
+
+        /**
+         * @param term 要查的词
+         * @return 词的序号，不在词典中则为-1
+         */
+        public int lookup(String term) {
+            byte[] target = term.getBytes(StandardCharsets.UTF_8);
+            // 最后一个第一个词不大于target的块
+            int lo = 0, hi = blockCount - 1, block = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int c = compareFirst(mid, target);
+                if (c == 0) return mid * k;
+                if (c < 0) {
+                    block = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            if (block < 0) return -1;
+
+            // 块内依次解码比较
+            BlockCursor cursor = new BlockCursor(block);
+            for (int j = 1; cursor.hasNext(); j++) {
+                int c = cursor.next().compareTo(target);
+                if (c == 0) return block * k + j;
+                if (c > 0) return -1;  // 块内有序，后面的更大
+            }
+            return -1;
+        }
+
+        private int blockOffset(int b) {
+            return buf.getInt(offsetTable + b * 4);
+        }
+
+        // 第b块的第一个词与target按无符号字节比较，直接在缓冲区上比，不解码
+        private int compareFirst(int b, byte[] target) {
+            int pos = blockOffset(b);
+            int len;
+            if (version == 1) {
+                len = buf.get(pos + 1) & 0xFF;
+                pos += 2;
+            } else {
+                len = 0;
+                for (int shift = 0; ; shift += 7) {
+                    int x = buf.get(pos++) & 0xFF;
+                    len |= (x & 0x7F) << shift;
+                    if ((x & 0x80) == 0) break;
+                }
+            }
+            int n = Math.min(len, target.length);
+            for (int i = 0; i < n; i++) {
+                int c = (buf.get(pos + i) & 0xFF) - (target[i] & 0xFF);
+                if (c != 0) return c;
+            }
+            return len - target.length;
+        }
+
+        /**
+         * 在一个块内顺序解码：构造后停在第一个词上，next()前进到下一个词，
+         * 当前词的字节保存在term[0, length)中（前缀部分沿用上一个词的字节）
+         */
+        class BlockCursor {
+            private final ByteBuffer in;
+            private byte[] term = new byte[64];
+            private int length;
+            private int remaining;  // 块内还没解码的词数
+            private int blockLcp;   // 版本1：块内共用的公共前缀长度
+
+            BlockCursor(int b) {
+                in = buf.duplicate();
+                in.position(blockOffset(b));
+                remaining = Math.min(k, size - b * k) - 1;
+                if (version == 1) {
+                    blockLcp = in.get() & 0xFF;
+                    read(0, in.get() & 0xFF);
+                } else {
+                    read(0, readVarint(in));
+                }
+            }
+
+            boolean hasNext() {
+                return remaining > 0;
+            }
+
+            BlockCursor next() {
+                if (version == 1) {
+                    read(blockLcp, in.get() & 0xFF);
+                } else {
+                    int lcp = readVarint(in);
+                    read(lcp, readVarint(in));
+                }
+                remaining--;
+                return this;
+            }
+
+            // 保留term的前lcp个字节，其后读入sufLen个字节
+            private void read(int lcp, int sufLen) {
+                if (lcp + sufLen > term.length) term = Arrays.copyOf(term, Math.max(term.length * 2, lcp + sufLen));
+                in.get(term, lcp, sufLen);
+                length = lcp + sufLen;
+            }
+
+            String term() {
+                return new String(term, 0, length, StandardCharsets.UTF_8);
+            }
+
+            // 按无符号字节比较当前词与target
+            int compareTo(byte[] target) {
+                return Arrays.compareUnsigned(term, 0, length, target, 0, target.length);
+            }
+        }
+    }
+
+    /*
+     * 压缩率与解码速度报告：同一份词典分别按版本1、2压缩，
+     * 统计文件大小、相对原文的比例、整体解压、按序号随机取词和按词查序号的速度
+     */
+    private static void report(Path input, int k) throws IOException {
+        List<String> terms = readTerms(input);
+        long rawBytes = Files.size(input);
+        System.out.printf("词典 %s：%d 个词，%,d 字节，块大小 k=%d%n", input, terms.size(), rawBytes, k);
+        System.out.println("版本    大小(字节)   压缩率   整体解压(ns/词)   get(ns/次)   lookup(ns/次)");
+        Random random = new Random(42);
+        int[] ordinals = new int[100_000];
+        for (int i = 0; i < ordinals.length; i++) ordinals[i] = random.nextInt(terms.size());
+        for (int version = 1; version <= 2; version++) {
+            byte[] data = compress(terms, k, version);
+            if (!decompress(data).equals(terms)) throw new IllegalStateException("版本" + version + "解压结果与原词典不一致");
+            Reader reader = new Reader(ByteBuffer.wrap(data));
+
+            // 各项重复几轮，取最快的一轮，排除JIT预热的影响
+            long decode = Long.MAX_VALUE, get = Long.MAX_VALUE, lookup = Long.MAX_VALUE;
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                decompress(data);
+                decode = Math.min(decode, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int ordinal : ordinals) reader.get(ordinal);
+                get = Math.min(get, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                for (int ordinal : ordinals) {
+                    if (reader.lookup(terms.get(ordinal)) != ordinal) throw new IllegalStateException("lookup出错：" + ordinal);
+                }
+                lookup = Math.min(lookup, System.nanoTime() - start);
+            }
+            System.out.printf("v%d    %,12d   %5.1f%%   %15.1f   %10.1f   %13.1f%n", version, data.length,
+                    data.length * 100.0 / rawBytes, decode / (double) terms.size(),
+                    get / (double) ordinals.length, lookup / (double) ordinals.length);
+        }
+    }
+
 
     /* 工具函数 */
     private static List<String> readTerms(Path path) throws IOException {
@@ -132,10 +429,32 @@ public class FrontCoding {
         return Arrays.asList(content.split("\\s+"));
     }
 
-    private static int longestCommonPrefix(String a, String b) {
-        int len = Math.min(a.length(), b.length());
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.get() & 0xFF;
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+    }
+
+    private static int longestCommonPrefix(byte[] a, byte[] b) {
+        int len = Math.min(a.length, b.length);
         int i = 0;
-        while (i < len && a.charAt(i) == b.charAt(i)) i++;
+        while (i < len && a[i] == b[i]) i++;
         return i;
     }
+
+    // 按无符号字节比较，即UTF-8字节序
+    private static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
 }
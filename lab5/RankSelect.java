@@ -0,0 +1,207 @@
+import java.util.Arrays;
+
+/**
+ * 支持常数时间rank/select的静态位向量
+ * 位按long存放，第i位是words[i / 64]的第(i % 64)位，低位在前（与BitSet的布局相同）。
+ * rank目录分两级：每4096位一个超块，记下超块之前1的个数（int）；每512位一个块，记下块开始处相对超块的1的个数（char）。
+ * 求rank时查两张表，再对块内至多8个long做popcount；这两张表占位向量的约3.9%。
+ * select对1和0分别每隔4096个采样一次所在的块，在相邻两个采样块之间按块的rank二分，
+ * 再在块内按long找，最后在一个long里用broadword方法（按字节并行计数）定位。
+ * 两种采样合计每4096位约一个int（约0.8%），所以整个rank/select目录约占位向量的4.7%。
+ */
+class RankSelect {
+    private static final int BLOCK_WORDS = 8;       // 块：8个long，512位
+    private static final int SUPER_BLOCKS = 8;      // 超块：8个块，4096位
+    private static final int SAMPLE = 4096;         // select的采样间隔
+
+    private static final long ONES_STEP_8 = 0x0101010101010101L;
+    private static final long MSBS_STEP_8 = 0x8080808080808080L;
+    // SELECT_IN_BYTE[r << 8 | b]：字节b中第r个1（从0计）的位置
+    private static final byte[] SELECT_IN_BYTE = new byte[8 << 8];
+
+    static {
+        for (int b = 0; b < 256; b++) {
+            for (int i = 0, r = 0; i < 8; i++) {
+                if ((b >>> i & 1) != 0) SELECT_IN_BYTE[r++ << 8 | b] = (byte) i;
+            }
+        }
+    }
+
+    private final long[] words;
+    private final int length;
+    private final int ones;
+    private final int[] superRanks;
+    private final char[] blockRanks;
+    private final int[] oneSamples;   // 第i*SAMPLE个1所在的块
+    private final int[] zeroSamples;  // 第i*SAMPLE个0所在的块
+
+    /**
+     * @param words 位数据，低位在前；长度以外的位被忽略
+     * @param length 位数
+     */
+    public RankSelect(long[] words, int length) {
+        this.length = length;
+        this.words = Arrays.copyOf(words, (length + 63) >>> 6);
+        if ((length & 63) != 0) this.words[this.words.length - 1] &= (1L << length) - 1;
+
+        int blocks = (length >>> 9) + 1;
+        blockRanks = new char[blocks];
+        superRanks = new int[(blocks + SUPER_BLOCKS - 1) / SUPER_BLOCKS];
+        int rank = 0;
+        for (int b = 0; b < blocks; b++) {
+            if (b % SUPER_BLOCKS == 0) superRanks[b / SUPER_BLOCKS] = rank;
+            blockRanks[b] = (char) (rank - superRanks[b / SUPER_BLOCKS]);
+            for (int w = b * BLOCK_WORDS; w < Math.min((b + 1) * BLOCK_WORDS, this.words.length); w++) {
+                rank += Long.bitCount(this.words[w]);
+            }
+        }
+        ones = rank;
+
+        oneSamples = new int[ones / SAMPLE + 1];
+        zeroSamples = new int[(length - ones) / SAMPLE + 1];
+        for (int b = 0, nextOne = 0, nextZero = 0; b < blocks; b++) {
+            int onesEnd = b + 1 < blocks ? blockRank(b + 1) : ones;
+            int zerosEnd = b + 1 < blocks ? (b + 1) * 512 - onesEnd : length - ones;
+            for (; nextOne < oneSamples.length && nextOne * SAMPLE < onesEnd; nextOne++) oneSamples[nextOne] = b;
+            for (; nextZero < zeroSamples.length && nextZero * SAMPLE < zerosEnd; nextZero++) zeroSamples[nextZero] = b;
+        }
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return 1的总数
+     */
+    public int ones() {
+        return ones;
+    }
+
+    public boolean get(int i) {
+        return (words[i >>> 6] >>> i & 1) != 0;
+    }
+
+    /**
+     * @param i 0 <= i <= length()
+     * @return [0, i)中1的个数
+     */
+    public int rank1(int i) {
+        int w = i >>> 6;
+        int b = w / BLOCK_WORDS;
+        int rank = blockRank(b);
+        for (int j = b * BLOCK_WORDS; j < w; j++) rank += Long.bitCount(words[j]);
+        if ((i & 63) != 0) rank += Long.bitCount(words[w] & (1L << i) - 1);
+        return rank;
+    }
+
+    /**
+     * @param i 0 <= i <= length()
+     * @return [0, i)中0的个数
+     */
+    public int rank0(int i) {
+        return i - rank1(i);
+    }
+
+    /**
+     * @param k 从0计，k < ones()
+     * @return 第k个1的位置
+     */
+    public int select1(int k) {
+        int s = k / SAMPLE;
+        int lo = oneSamples[s];
+        int hi = s + 1 < oneSamples.length ? oneSamples[s + 1] : blockRanks.length - 1;
+        // 最后一个起始rank不超过k的块
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (blockRank(mid) <= k) lo = mid;
+            else hi = mid - 1;
+        }
+        int rest = k - blockRank(lo);
+        int w = lo * BLOCK_WORDS;
+        for (int c; rest >= (c = Long.bitCount(words[w])); w++) rest -= c;
+        return (w << 6) + selectInWord(words[w], rest);
+    }
+
+    /**
+     * @param k 从0计，k < length() - ones()
+     * @return 第k个0的位置
+     */
+    public int select0(int k) {
+        int s = k / SAMPLE;
+        int lo = zeroSamples[s];
+        int hi = s + 1 < zeroSamples.length ? zeroSamples[s + 1] : blockRanks.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (mid * 512 - blockRank(mid) <= k) lo = mid;
+            else hi = mid - 1;
+        }
+        int rest = k - (lo * 512 - blockRank(lo));
+        int w = lo * BLOCK_WORDS;
+        for (int c; rest >= (c = Long.bitCount(~words[w])); w++) rest -= c;
+        return (w << 6) + selectInWord(~words[w], rest);
+    }
+
+    // 块b开始处之前1的个数
+    private int blockRank(int b) {
+        return superRanks[b / SUPER_BLOCKS] + blockRanks[b];
+    }
+
+    /**
+     * 一个long中第k个1（从0计）的位置：先并行求出各字节的popcount前缀和，
+     * 用一次减法同时比较8个前缀和与k得到所在字节，再查表得到字节内的位置
+     */
+    static int selectInWord(long x, int k) {
+        long s = x - (x >>> 1 & 0x5555555555555555L);
+        s = (s & 0x3333333333333333L) + (s >>> 2 & 0x3333333333333333L);
+        s = (s + (s >>> 4)) & 0x0F0F0F0F0F0F0F0FL;
+        long byteSums = s * ONES_STEP_8;  // 第i个字节是第0~i个字节的1的个数
+        long leq = ((k * ONES_STEP_8 | MSBS_STEP_8) - byteSums) & MSBS_STEP_8;
+        int place = Long.bitCount(leq) * 8;
+        int rankInByte = k - (int) ((byteSums << 8) >>> place & 0xFF);
+        return place + SELECT_IN_BYTE[rankInByte << 8 | (int) (x >>> place & 0xFF)];
+    }
+
+    /**
+     * 与BitSet.toByteArray()相同的字节序列：低位在前，去掉末尾的全0字节
+     */
+    public byte[] toByteArray() {
+        int n = 0;
+        for (int i = words.length - 1; i >= 0 && n == 0; i--) {
+            if (words[i] != 0) n = i * 8 + (71 - Long.numberOfLeadingZeros(words[i])) / 8;
+        }
+        byte[] bytes = new byte[n];
+        for (int i = 0; i < n; i++) bytes[i] = (byte) (words[i >>> 3] >>> (i & 7) * 8);
+        return bytes;
+    }
+
+    /**
+     * @return rank/select目录占用的字节数
+     */
+    public long directoryBytes() {
+        return superRanks.length * 4L + blockRanks.length * 2L + (oneSamples.length + zeroSamples.length) * 4L;
+    }
+
+    /**
+     * 逐位追加构造位向量
+     */
+    static class Builder {
+        private long[] words = new long[16];
+        private int length;
+
+        public Builder append(boolean bit) {
+            if (length >>> 6 == words.length) words = Arrays.copyOf(words, words.length * 2);
+            if (bit) words[length >>> 6] |= 1L << length;
+            length++;
+            return this;
+        }
+
+        public int length() {
+            return length;
+        }
+
+        public RankSelect build() {
+            return new RankSelect(words, length);
+        }
+    }
+}
@@ -1,46 +1,70 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.util.*;
 
+/**
+ * 用LOUDS位图表示的前缀树词典
+ * 词按UTF-8编码成字节串后插入，每条边的标签是一个字节，所以任何Unicode词（如中文词）都能存，
+ * 查询时同样先把词编码成UTF-8，取回时把路径上的字节解码。
+ * 用法：java SuccinctTrie [词典文件] [输出文件]，默认 dict.txt、SuccinctTrie.bin
+ */
 public class SuccinctTrie {
 
     static class Louds {
-        BitSet bits;
-        byte[] labels;
+        RankSelect bits;
+        byte[] labels;         // 结点i（i>=1）的入边标签是labels[i-1]，同一结点的子结点按无符号字节值升序
         int bitLen;
+        RankSelect terminals;  // 按结点编号，1表示从根到该结点的路径是一个完整的词
     }
 
     public static void main(String[] args) throws IOException {
-        List<String> vocab = readVocab("dict.txt");
+        String dictFile = args.length >= 1 ? args[0] : "dict.txt";
+        String outFile = args.length >= 2 ? args[1] : "SuccinctTrie.bin";
+        List<String> vocab = readVocab(dictFile);
         System.out.printf("读取词典：%d 个词项\n", vocab.size());
 
-        Louds louds = buildLouds(vocab);
-        System.out.printf("构建完成，位串长度=%d，标签数=%d\n", louds.bitLen, louds.labels.length);
-        // 保存到文件
-        saveLouds(louds, "SuccinctTrie.bin");
-
-        int[] ptrs = buildNodeIdPointers(vocab, louds);
-        System.out.printf("节点指针构建完成，指针数=%d\n", ptrs.length);
+        Louds built = buildLouds(vocab);
+        System.out.printf("构建完成，位串长度=%d，标签数=%d，词数=%d\n", built.bitLen, built.labels.length, built.terminals.ones());
+        // 保存到文件，之后的查询都在从文件读回的结构上进行
+        saveLouds(built, outFile);
+        Louds louds = loadLouds(outFile);
 
         long bitsBytes = (louds.bitLen + 7) / 8;
         long labelsBytes = louds.labels.length;
-        long ptrBytes = ptrs.length * 4;
-
-        long totalBytes = bitsBytes + labelsBytes + ptrBytes;
-        System.out.printf("bits=%,d bytes, labels=%,d bytes, ptrs=%,d bytes\n", bitsBytes, labelsBytes, ptrBytes);
-        System.out.printf("总共（不考虑词项指针）=%,d bytes (≈%.2f KB)\n", (bitsBytes + labelsBytes), (bitsBytes + labelsBytes) / 1024.0);
-        System.out.printf("总共（考虑词项指针）=%,d bytes (≈%.2f KB)\n", totalBytes, totalBytes / 1024.0);
+        long terminalBytes = (louds.terminals.length() + 7) / 8;
+        long totalBytes = bitsBytes + labelsBytes + terminalBytes;
+        System.out.printf("bits=%,d bytes, labels=%,d bytes, terminals=%,d bytes\n", bitsBytes, labelsBytes, terminalBytes);
+        System.out.printf("rank/select目录=%,d bytes（位串的%.1f%%，只在内存中）\n",
+                louds.bits.directoryBytes() + louds.terminals.directoryBytes(),
+                (louds.bits.directoryBytes() + louds.terminals.directoryBytes()) * 100.0 / (bitsBytes + terminalBytes));
+        System.out.printf("总共=%,d bytes (≈%.2f KB)，词项ID由终止位的rank得到，不需要词项指针\n", totalBytes, totalBytes / 1024.0);
+
+        // 每个词都能查到，且词 -> ID -> 词 还原一致
+        long start = System.nanoTime();
+        for (String w : vocab) {
+            int id = wordId(louds, w);
+            if (id < 0 || !idToWord(louds, id).equals(w)) throw new RuntimeException("词典不一致：" + w);
+        }
+        System.out.printf("全部 %d 个词 词->ID->词 校验通过，平均 %.0f ns/词\n",
+                vocab.size(), (System.nanoTime() - start) / (double) vocab.size());
 
         // 随机查询示例
         Random rand = new Random();
         for (int i = 0; i < 5; i++) {
-            int idx = rand.nextInt(vocab.size());
-            String original = vocab.get(idx);
-            int nodeId = ptrs[idx];
-            String recovered = toTerm(louds, nodeId);
-            System.out.printf("[测试] 原词：%-10s  => 查询结果：%s\n", original, recovered);
+            String original = vocab.get(rand.nextInt(vocab.size()));
+            int id = wordId(louds, original);
+            System.out.printf("[测试] 原词：%-10s  => ID：%-6d => 查询结果：%s\n", original, id, idToWord(louds, id));
         }
+        String word = vocab.get(rand.nextInt(vocab.size()));
+        String prefix = word.substring(0, (word.length() + 1) / 2);
+        List<String> completions = prefixSearch(louds, prefix);
+        System.out.printf("[测试] contains(%s)=%b, contains(%s#)=%b\n", word, contains(louds, word), word, contains(louds, word + "#"));
+        System.out.printf("[测试] longestPrefix(%s#)=%s\n", word, longestPrefix(louds, word + "#"));
+        System.out.printf("[测试] prefixSearch(%s)=%d个，前10个：%s\n", prefix, completions.size(),
+                completions.subList(0, Math.min(10, completions.size())));
     }
 
     private static List<String> readVocab(String file) throws IOException {
@@ -49,7 +73,8 @@ public class SuccinctTrie {
     }
 
     private static Louds buildLouds(List<String> vocab) {
-        BitSet bits = new BitSet();
+        RankSelect.Builder bits = new RankSelect.Builder();
+        RankSelect.Builder terminals = new RankSelect.Builder();
         ByteArrayOutputStream labStream = new ByteArrayOutputStream();
 
         Queue<Node> queue = new ArrayDeque<>();
@@ -57,117 +82,184 @@ public class SuccinctTrie {
         for (String w : vocab) insert(root, w);
 
         queue.add(root);
-        int bitPos = 0;
 
         while (!queue.isEmpty()) {
             Node p = queue.poll();
-            List<Character> keys = new ArrayList<>(p.children.keySet());
-            Collections.sort(keys); //可以不排序
-
-            for (char c : keys) {
-                bits.set(bitPos);  // 子边为1
-                Node child = p.children.get(c);
-                queue.add(child);
-                labStream.write((byte) c);
-                bitPos++;
+            terminals.append(p.terminal);  // 出队顺序就是结点编号
+
+            // TreeMap按无符号字节值升序：查子结点时可以二分，前缀枚举按UTF-8字节序（即码点序）输出
+            for (Map.Entry<Integer, Node> e : p.children.entrySet()) {
+                bits.append(true);  // 子边为1
+                queue.add(e.getValue());
+                labStream.write(e.getKey());
             }
-            bitPos++;  // 结束0
+            bits.append(false);  // 结束0
         }
 
         Louds l = new Louds();
-        l.bits = bits;
-        l.bitLen = bitPos;
+        l.bits = bits.build();
+        l.bitLen = l.bits.length();
         l.labels = labStream.toByteArray();
+        l.terminals = terminals.build();
         return l;
     }
 
     static class Node {
-        Map<Character, Node> children = new HashMap<>();
+        TreeMap<Integer, Node> children = new TreeMap<>();  // 标签（无符号字节值） -> 子结点
+        boolean terminal;
     }
 
     private static void insert(Node root, String word) {
         Node cur = root;
-        for (char c : word.toCharArray()) {
-            cur = cur.children.computeIfAbsent(c, k -> new Node());
+        for (byte b : word.getBytes(StandardCharsets.UTF_8)) {
+            cur = cur.children.computeIfAbsent(b & 0xFF, k -> new Node());
         }
+        cur.terminal = true;
     }
 
-    private static int[] buildNodeIdPointers(List<String> vocab, Louds l) {
-        int[] ptr = new int[vocab.size()];
+    /* 查询：结点编号从0计（根为0），0的序号从1计，结点v的子边是第v个0之后、第v+1个0之前的那些1（根从位串开头起） */
+
+    /**
+     * 在结点nodeId的子结点中找标签为label的那个：子边是两个0之间的一段1，
+     * 对应的标签在labels中连续存放且有序，所以二分查找
+     * @param label 无符号字节值
+     * @return 子结点编号，没有则为-1
+     */
+    private static int child(Louds l, int nodeId, int label) {
+        int startBit = (nodeId == 0) ? 0 : select0(l.bits, nodeId) + 1;
+        int endBit = select0(l.bits, nodeId + 1);  // 结点自己的结束0
+        // 第一个孩子的编号由一次rank得到，之后的孩子依次加1
+        int first = rank1(l.bits, startBit);
+        int lo = first - 1, hi = first - 1 + (endBit - startBit) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int m = l.labels[mid] & 0xFF;
+            if (m < label) lo = mid + 1;
+            else if (m > label) hi = mid - 1;
+            else return mid + 1;
+        }
+        return -1;
+    }
 
-        for (int wi = 0; wi < vocab.size(); wi++) {
-            String w = vocab.get(wi);
-            int nodeId = 0;
+    /**
+     * @return 沿字节串s走到的结点编号，路径不存在则为-1
+     */
+    private static int walk(Louds l, byte[] s) {
+        int nodeId = 0;
+        for (int i = 0; i < s.length && nodeId >= 0; i++) {
+            nodeId = child(l, nodeId, s[i] & 0xFF);
+        }
+        return nodeId;
+    }
 
-            for (char c : w.toCharArray()) {
-                int startBit = (nodeId == 0) ? 0 : select0(l.bits, nodeId) + 1;
-                int nextNodeId = -1;
+    /**
+     * @return 词典中是否有这个词
+     */
+    public static boolean contains(Louds l, String word) {
+        return wordId(l, word) >= 0;
+    }
 
-                for (int bitIdx = startBit; bitIdx < l.bitLen && l.bits.get(bitIdx); bitIdx++) {
-                    int childNodeId = rank1(l.bits, bitIdx);
-                    if (l.labels[childNodeId - 1] == c) {
-                        nextNodeId = childNodeId;
-                        break;
-                    }
-                }
+    /**
+     * 词 -> ID：ID是该词的结点之前的终止结点个数，取值[0, 词数)
+     * @return 词的ID，不在词典中则为-1
+     */
+    public static int wordId(Louds l, String word) {
+        int nodeId = walk(l, word.getBytes(StandardCharsets.UTF_8));
+        if (nodeId < 0 || !l.terminals.get(nodeId)) return -1;
+        return l.terminals.rank1(nodeId);
+    }
 
-                if (nextNodeId == -1) throw new RuntimeException("词典不一致：" + w);
-                nodeId = nextNodeId;
-            }
+    /**
+     * ID -> 词
+     * @param id 0 <= id < 词数
+     */
+    public static String idToWord(Louds l, int id) {
+        return toTerm(l, l.terminals.select1(id));
+    }
 
-            ptr[wi] = nodeId;
+    /**
+     * @return 词典中是text前缀的最长的词，没有则为null
+     */
+    public static String longestPrefix(Louds l, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        int nodeId = 0;
+        int longest = -1;
+        for (int i = 0; i < bytes.length; i++) {
+            nodeId = child(l, nodeId, bytes[i] & 0xFF);
+            if (nodeId < 0) break;
+            if (l.terminals.get(nodeId)) longest = i + 1;  // 词总在字符边界结束
         }
+        return longest < 0 ? null : new String(bytes, 0, longest, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return 以prefix开头的所有词，按字典序
+     */
+    public static List<String> prefixSearch(Louds l, String prefix) {
+        List<String> result = new ArrayList<>();
+        byte[] bytes = prefix.getBytes(StandardCharsets.UTF_8);
+        int nodeId = walk(l, bytes);
+        if (nodeId >= 0) collect(l, nodeId, Arrays.copyOf(bytes, bytes.length + 16), bytes.length, result);
+        return result;
+    }
 
-        return ptr;
+    // 先序遍历nodeId的子树，子结点按标签从小到大；path[0, depth)是从根到nodeId的字节串
+    private static void collect(Louds l, int nodeId, byte[] path, int depth, List<String> out) {
+        if (l.terminals.get(nodeId)) out.add(new String(path, 0, depth, StandardCharsets.UTF_8));
+        int startBit = (nodeId == 0) ? 0 : select0(l.bits, nodeId) + 1;
+        int endBit = select0(l.bits, nodeId + 1);
+        int first = rank1(l.bits, startBit);
+        if (depth == path.length) path = Arrays.copyOf(path, depth * 2 + 1);
+        for (int childNodeId = first; childNodeId < first + (endBit - startBit); childNodeId++) {
+            path[depth] = l.labels[childNodeId - 1];
+            collect(l, childNodeId, path, depth + 1, out);
+        }
     }
 
     private static String toTerm(Louds l, int nodeId) {
-        StringBuilder sb = new StringBuilder();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
 
         while (nodeId > 0) {
-            sb.append((char) l.labels[nodeId - 1]);
+            bytes.write(l.labels[nodeId - 1]);
             nodeId = rank0(l.bits, select1(l.bits, nodeId));
         }
 
-        return sb.reverse().toString();
+        byte[] b = bytes.toByteArray();
+        for (int i = 0, j = b.length - 1; i < j; i++, j--) {
+            byte t = b[i];
+            b[i] = b[j];
+            b[j] = t;
+        }
+        return new String(b, StandardCharsets.UTF_8);
     }
 
-    // 工具函数：rank1, rank0, select1, select0
-    private static int rank1(BitSet bs, int pos) {
-        return bs.get(0, pos + 1).cardinality();
+    // 工具函数：rank1, rank0, select1, select0，pos从0计，rank含pos本身，k从1计
+    // 都由RankSelect的目录在常数时间内完成
+    private static int rank1(RankSelect bs, int pos) {
+        return bs.rank1(pos + 1);
     }
 
-    private static int rank0(BitSet bs, int pos) {
-        return (pos + 1) - rank1(bs, pos);
+    private static int rank0(RankSelect bs, int pos) {
+        return bs.rank0(pos + 1);
     }
 
-    private static int select1(BitSet bs, int k) {
-        int count = 0;
-        for (int i = 0; i < bs.length(); i++) {
-            if (bs.get(i)) {
-                count++;
-                if (count == k) return i;
-            }
-        }
-        return -1;
+    private static int select1(RankSelect bs, int k) {
+        return k >= 1 && k <= bs.ones() ? bs.select1(k - 1) : -1;
     }
 
-    private static int select0(BitSet bs, int k) {
-        int count = 0;
-        for (int i = 0; i < bs.length(); i++) {
-            if (!bs.get(i)) {
-                count++;
-                if (count == k) return i;
-            }
-        }
-        return -1;
+    private static int select0(RankSelect bs, int k) {
+        return k >= 1 && k <= bs.length() - bs.ones() ? bs.select0(k - 1) : -1;
     }
 
+    /*
+     * 文件结构：[位串长度, 4B] [位串字节数, 4B] [位串, ?B] [标签数, 4B] [标签, ?B]
+     *           [结点数, 4B] [终止位字节数, 4B] [终止位, ?B]
+     */
     private static void saveLouds(Louds l, String file) throws IOException {
         try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
             out.writeInt(l.bitLen);
 
-            // bits保存为byte数组（BitSet.toByteArray是小端序）
+            // bits保存为byte数组（与BitSet.toByteArray相同，小端序）
             byte[] bitBytes = l.bits.toByteArray();
             out.writeInt(bitBytes.length);  // 记录bitBytes长度
             out.write(bitBytes);
@@ -175,8 +267,39 @@ public class SuccinctTrie {
             // labels保存
             out.writeInt(l.labels.length);  // 记录labels长度
             out.write(l.labels);
+
+            // 终止位保存
+            byte[] terminalBytes = l.terminals.toByteArray();
+            out.writeInt(l.terminals.length());
+            out.writeInt(terminalBytes.length);
+            out.write(terminalBytes);
         }
         System.out.println("压缩词典已保存到 " + file);
     }
 
+    /**
+     * 读回saveLouds保存的文件，并建立rank/select目录
+     */
+    public static Louds loadLouds(String file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            Louds l = new Louds();
+            l.bitLen = in.readInt();
+            l.bits = new RankSelect(readWords(in), l.bitLen);
+            l.labels = new byte[in.readInt()];
+            in.readFully(l.labels);
+            int nodes = in.readInt();
+            l.terminals = new RankSelect(readWords(in), nodes);
+            return l;
+        }
+    }
+
+    // 读[字节数, 4B] [字节, ?B]，按小端序拼成long数组
+    private static long[] readWords(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        long[] words = new long[(bytes.length + 7) / 8];
+        ByteBuffer.wrap(Arrays.copyOf(bytes, words.length * 8)).order(ByteOrder.LITTLE_ENDIAN).asLongBuffer().get(words);
+        return words;
+    }
+
 }